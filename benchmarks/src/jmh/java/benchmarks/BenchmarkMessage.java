@@ -0,0 +1,24 @@
+package benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Message type used by all benchmarks.
+ *
+ * @author Tobias Haider
+ */
+public class BenchmarkMessage {
+
+    private final String payload;
+
+    @JsonCreator
+    public BenchmarkMessage(@JsonProperty("payload") String payload) {
+        this.payload = payload;
+    }
+
+    @JsonProperty("payload")
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,117 @@
+package benchmarks;
+
+import mf.MessageBus;
+import mf.MessageBusFactory;
+import mf.MessageHandler;
+import network.OverflowPolicy;
+import network.ReceiverType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.BinaryMessageCodec;
+import utilities.DeliveryOverflowPolicy;
+import utilities.JsonMessageCodec;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole pipeline from publishing a message on one message bus to its delivery on a second message bus over the loopback interface.
+ * The throughput benchmark publishes a burst of messages and waits until all of them were delivered.
+ * The latency benchmark publishes a single message and waits for its delivery, so the sampled times are round trips through encoding, sending, receiving,
+ * parsing and delivering.
+ *
+ * @author Tobias Haider
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    private static final int PUBLISHER_PORT = 7201;
+    private static final int SUBSCRIBER_PORT = 7202;
+    private static final int BURST = 1000;
+
+    @Param({"JSON", "BINARY"})
+    private String codec;
+
+    @Param({"NIO", "BLOCKING"})
+    private ReceiverType receiverType;
+
+    private MessageBus publisher;
+    private MessageBus subscriber;
+    private Semaphore delivered;
+    private BenchmarkMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        publisher = createMessageBus("publisher", PUBLISHER_PORT);
+        subscriber = createMessageBus("subscriber", SUBSCRIBER_PORT);
+        delivered = new Semaphore(0);
+        subscriber.addMessageResponse(new MessageHandler<BenchmarkMessage>(BenchmarkMessage.class) {
+            @Override
+            public void receiveMessage(BenchmarkMessage message) {
+                delivered.release();
+            }
+        });
+        publisher.addConnection("subscriber", "127.0.0.1", SUBSCRIBER_PORT);
+        message = new BenchmarkMessage("Hi");
+
+        // Waits until the persistent connection is established
+        publisher.publishMessageTo("subscriber", BenchmarkMessage.class, message);
+        if (!delivered.tryAcquire(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The subscriber did not receive the first message.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        publisher.stop();
+        subscriber.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void throughput() throws InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            publisher.publishMessageTo("subscriber", BenchmarkMessage.class, message);
+        }
+        delivered.acquire(BURST);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws InterruptedException {
+        publisher.publishMessageTo("subscriber", BenchmarkMessage.class, message);
+        delivered.acquire();
+    }
+
+    private MessageBus createMessageBus(String identifier, int port) throws IOException {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setIdentifier(identifier);
+        factory.setServerPort(port);
+        factory.setReceiverType(receiverType);
+        factory.setMessageCodec(codec.equals("BINARY") ? new BinaryMessageCodec() : new JsonMessageCodec());
+        factory.setMessageCapacity(BURST * 4);
+        factory.setOutboundQueueCapacity(BURST * 4);
+        // A dropped message would stall the benchmark, so both queues make the publishing thread wait instead
+        factory.setOverflowPolicy(OverflowPolicy.BLOCK);
+        factory.setDeliveryOverflowPolicy(DeliveryOverflowPolicy.BLOCK);
+        return factory.create();
+    }
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import mf.MessageHandler;
+import mf.MessagePackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.BinaryMessageCodec;
+import utilities.JsonMessageCodec;
+import utilities.MessageConverter;
+import utilities.MessageEnvelope;
+import utilities.SubscriptionService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of message packages: the json string helpers used by applications and the codecs used on the wire.
+ *
+ * @author Tobias Haider
+ * @see MessageConverter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConverterBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private String codec;
+
+    @Param({"16", "1024"})
+    private int payloadSize;
+
+    private MessageConverter converter;
+    private MessagePackage messagePackage;
+    private String json;
+    private byte[] encoded;
+    private MessageEnvelope envelope;
+
+    @Setup
+    public void setUp() throws Exception {
+        SubscriptionService subscriptions = new SubscriptionService();
+        subscriptions.add(new MessageHandler<BenchmarkMessage>(BenchmarkMessage.class) {
+            @Override
+            public void receiveMessage(BenchmarkMessage message) {
+            }
+        });
+        converter = new MessageConverter(subscriptions, codec.equals("BINARY") ? new BinaryMessageCodec() : new JsonMessageCodec());
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < payloadSize; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        messagePackage = new MessagePackage("12345:678", "publisher", "any", BenchmarkMessage.class.getSimpleName(), 5, new BenchmarkMessage(payload.toString()));
+        json = converter.convertToJson(BenchmarkMessage.class, messagePackage);
+        encoded = converter.encode(BenchmarkMessage.class, messagePackage).toByteArray();
+        envelope = converter.parse(encoded);
+    }
+
+    @Benchmark
+    public String convertToJson() throws Exception {
+        return converter.convertToJson(BenchmarkMessage.class, messagePackage);
+    }
+
+    @Benchmark
+    public MessagePackage convertToMessagePackage() throws Exception {
+        return converter.convertToMessagePackage(json);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return converter.encode(BenchmarkMessage.class, messagePackage).toByteArray();
+    }
+
+    @Benchmark
+    public BenchmarkMessage parseAndBind() throws Exception {
+        return converter.convertPayload(converter.parse(encoded), BenchmarkMessage.class);
+    }
+
+    @Benchmark
+    public byte[] forward() {
+        return converter.convertToForwardedMessage(envelope, 4, "relay").toByteArray();
+    }
+
+    @Benchmark
+    public long locateMessageId() {
+        return converter.locateMessageId(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import mf.MessageHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import utilities.DeliveryOverflowPolicy;
+import utilities.DeliveryQueueType;
+import utilities.DeliverySettings;
+import utilities.MessageDeliverer;
+import utilities.ThreadingMode;
+import utilities.WaitStrategy;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the handoff of received messages to the delivery workers. The handler only consumes the message, so the queue is the bottleneck.
+ * The receiving threads wait for room in the queue, so the throughput is the rate at which the workers drain their queues.
+ *
+ * @author Tobias Haider
+ * @see MessageDeliverer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDelivererBenchmark {
+    private static final BenchmarkMessage MESSAGE = new BenchmarkMessage("Hi");
+
+    @Param({"BLOCKING", "RING_BUFFER"})
+    private DeliveryQueueType queueType;
+
+    @Param({"PARK", "YIELD"})
+    private WaitStrategy waitStrategy;
+
+    @Param({"1024"})
+    private int capacity;
+
+    private MessageDeliverer deliverer;
+    private MessageHandler<BenchmarkMessage> handler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        deliverer = new MessageDeliverer(capacity, new DeliverySettings(1, Collections.emptyMap(), ThreadingMode.PLATFORM,
+                DeliveryOverflowPolicy.BLOCK, 0, null, queueType, waitStrategy));
+        deliverer.start();
+        handler = new MessageHandler<BenchmarkMessage>(BenchmarkMessage.class) {
+            @Override
+            public void receiveMessage(BenchmarkMessage message) {
+                Blackhole.consumeCPU(1);
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deliverer.stopDelivering();
+    }
+
+    @Benchmark
+    public void handoff() {
+        deliverer.deliverMessage(MESSAGE, handler, "benchmark");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void handoffContended() {
+        deliverer.deliverMessage(MESSAGE, handler, "benchmark");
+    }
+}
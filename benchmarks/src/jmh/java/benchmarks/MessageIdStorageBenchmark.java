@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.MessageIdStorage;
+import utilities.MessageIds;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the message id storage filled exactly to its capacity and filled far past it, where old generations are evicted continuously.
+ * Adding new ids past the capacity is the steady state of a long running message bus.
+ *
+ * @author Tobias Haider
+ * @see MessageIdStorage
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageIdStorageBenchmark {
+    private static final int ORIGIN = 4711;
+
+    @Param({"10000", "1000000"})
+    private int capacity;
+
+    @Param({"1", "10"})
+    private int fillFactor;
+
+    private MessageIdStorage storage;
+    private AtomicLong sequence;
+    private long stored;
+    private String storedId;
+
+    @Setup
+    public void setUp() {
+        storage = new MessageIdStorage(capacity);
+        long filled = (long) capacity * fillFactor;
+        for (long i = 1; i <= filled; i++) {
+            storage.add(ORIGIN, i);
+        }
+        sequence = new AtomicLong(filled);
+        stored = filled;
+        storedId = MessageIds.format(ORIGIN, stored);
+    }
+
+    @Benchmark
+    public boolean addNew() {
+        return storage.add(ORIGIN, sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addNewContended() {
+        return storage.add(ORIGIN, sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    public boolean addDuplicate() {
+        return storage.add(ORIGIN, stored);
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return storage.contains(ORIGIN, stored);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return storage.contains(ORIGIN + 1, stored);
+    }
+
+    @Benchmark
+    public boolean containsString() {
+        return storage.contains(storedId);
+    }
+}
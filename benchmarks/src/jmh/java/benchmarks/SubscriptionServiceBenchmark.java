@@ -0,0 +1,78 @@
+package benchmarks;
+
+import mf.MessageHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.SubscriptionService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups done for every received message: whether the message type is subscribed and which handler receives it.
+ * Every subscribed type uses its own handler class, like in an application with many message types.
+ *
+ * @author Tobias Haider
+ * @see SubscriptionService
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionServiceBenchmark {
+
+    @Param({"1", "100"})
+    private int subscriptions;
+
+    private SubscriptionService service;
+    private String subscribedType;
+    private String unknownType;
+
+    @Setup
+    public void setUp() {
+        service = new SubscriptionService();
+        service.add(new MessageHandler<BenchmarkMessage>(BenchmarkMessage.class) {
+            @Override
+            public void receiveMessage(BenchmarkMessage message) {
+            }
+        });
+        // Further subscriptions fill the map. Only the simple name is used as key, so array classes of distinct dimensions serve as distinct types.
+        Class<?> type = Object.class;
+        for (int i = 1; i < subscriptions; i++) {
+            type = java.lang.reflect.Array.newInstance(type, 0).getClass();
+            service.add(new MessageHandler<Object>(type) {
+                @Override
+                public void receiveMessage(Object message) {
+                }
+            });
+        }
+        // Copies, so the lookup has to compare the strings instead of finding the identical object
+        subscribedType = new String(BenchmarkMessage.class.getSimpleName());
+        unknownType = "UnknownMessage";
+    }
+
+    @Benchmark
+    public boolean containsSubscribed() {
+        return service.contains(subscribedType);
+    }
+
+    @Benchmark
+    public boolean containsUnknown() {
+        return service.contains(unknownType);
+    }
+
+    @Benchmark
+    public MessageHandler getHandler() {
+        return service.getHandler(subscribedType);
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import mf.MessageBus;
+import mf.MessageBusFactory;
+import mf.MessageHandler;
+import network.ReceiverType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.ThreadingMode;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform threads and virtual threads for many concurrently connected peers and blocking message handlers.
+ * Every operation connects all peers at once, lets each of them send one message over its own connection and waits until the blocking handler processed all messages.
+ * The virtual thread mode requires Java 21 or newer.
+ *
+ * @author Tobias Haider
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ThreadingModeBenchmark {
+    private static final int PORT = 7101;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ThreadingMode threadingMode;
+
+    @Param({"1000"})
+    private int peers;
+
+    @Param({"5"})
+    private int handlerMillis;
+
+    private MessageBus messageBus;
+    private Semaphore delivered;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setIdentifier("benchmark");
+        factory.setServerPort(PORT);
+        factory.setReceiverType(ReceiverType.BLOCKING);
+        factory.setThreadingMode(threadingMode);
+        factory.setMessageCapacity(peers * 4);
+        factory.setDeliveryThreads(peers);
+        factory.setHandlerConcurrency(BenchmarkMessage.class, peers);
+        messageBus = factory.create();
+
+        delivered = new Semaphore(0);
+        messageBus.addMessageResponse(new MessageHandler<BenchmarkMessage>(BenchmarkMessage.class) {
+            @Override
+            public void receiveMessage(BenchmarkMessage message) {
+                try {
+                    Thread.sleep(handlerMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.release();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageBus.stop();
+    }
+
+    @Benchmark
+    public void connectAndDeliver() throws Exception {
+        Socket[] sockets = new Socket[peers];
+        try {
+            for (int i = 0; i < peers; i++) {
+                sockets[i] = new Socket("127.0.0.1", PORT);
+            }
+            for (int i = 0; i < peers; i++) {
+                long messageId = ++sequence;
+                String json = "{\"messageId\":\"" + i + ":" + messageId + "\",\"senderId\":\"peer" + i + "\",\"receiverId\":\"benchmark\","
+                        + "\"messageType\":\"BenchmarkMessage\",\"timeToLive\":1,\"message\":{\"payload\":\"Hi\"}}";
+                sockets[i].getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+        delivered.acquire(peers);
+    }
+}
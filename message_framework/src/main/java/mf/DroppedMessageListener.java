@@ -0,0 +1,20 @@
+package mf;
+
+/**
+ * The DroppedMessageListener interface can be implemented by the application in order to be notified about received messages,
+ * which were discarded, because the application could not keep up with delivering them.
+ *
+ * @author Tobias Haider
+ * @see MessageBusFactory#setDroppedMessageListener(DroppedMessageListener)
+ */
+@FunctionalInterface
+public interface DroppedMessageListener {
+
+    /**
+     * Called by the receiving thread for every discarded message. Implementations should return quickly.
+     *
+     * @param message     The discarded message
+     * @param messageType Class of the discarded message
+     */
+    void messageDropped(Object message, Class<?> messageType);
+}
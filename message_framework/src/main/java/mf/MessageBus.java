@@ -1,5 +1,9 @@
 package mf;
 
+import utilities.MessageBusMetrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * MessageBus is the interface with which the application interacts with the messaging framework.
@@ -25,6 +29,21 @@ public interface MessageBus {
      */
     void publishMessageToAny(Class<?> messageType, Object message);
 
+    /**
+     * Sends a request to a specific receiver and waits asynchronously for its reply. The receiver answers with a RequestHandler.
+     * The returned future is completed by a receiving thread, when the reply arrives, or completed exceptionally with a TimeoutException,
+     * if no reply arrived in time. Long running follow-up work should therefore use the async methods of the future.
+     *
+     * @param receiver    Id of peer to which the request should be sent
+     * @param messageType Class type of which the request object is
+     * @param message     Request object to be sent
+     * @param replyType   Class type of the expected reply
+     * @param timeout     Time in milliseconds to wait for the reply
+     * @param <Reply>     Type of the expected reply
+     * @return Future of the reply
+     */
+    <Reply> CompletableFuture<Reply> request(String receiver, Class<?> messageType, Object message, Class<Reply> replyType, long timeout);
+
     /**
      * Subscribes to a message type. You will receive messages of this type from now on.
      *
@@ -62,6 +81,28 @@ public interface MessageBus {
      */
     void removeConnection(String identifier);
 
+    /**
+     * Get the amount of messages waiting to be sent to each outgoing connection.
+     *
+     * @return Outbound queue depth for every identifier of a communication partner
+     */
+    Map<String, Integer> getOutboundQueueDepths();
+
+    /**
+     * Get the amount of received messages, which were discarded, because the application could not keep up with delivering them.
+     *
+     * @return Amount of dropped messages since the creation of the message bus
+     */
+    long getDroppedMessageCount();
+
+    /**
+     * Get the metrics of the message bus: counters of published, received, forwarded, delivered, deduplicated and dropped messages,
+     * queue depths and latency histograms. The metrics can be bound to Micrometer with the MicrometerMetricsBinder.
+     *
+     * @return Metrics of the message bus
+     */
+    MessageBusMetrics getMetrics();
+
     /**
      * Allows you to stop all threads of the message bus. This operation should be called before terminating the program.
      */
@@ -1,11 +1,24 @@
 package mf;
 
+import network.ConnectionSettings;
 import network.Forwarder;
+import network.OutboundMessage;
+import network.RouteAdvertisement;
 import utilities.*;
 import network.Receiver;
+import network.ReceiverSettings;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,18 +34,32 @@ import org.slf4j.LoggerFactory;
  * @see MessageDeliverer
  * @see MessageIdStorage
  * @see SubscriptionService
+ * @see MessageBusMetrics
  */
 public class MessageBusController implements MessageBus {
 
     private static final int MESSAGE_STORAGE_TO_ID_STORAGE_RATIO = 10;
+    /**
+     * Accuracy of request timeouts and amount of ticks per turn of the timeout wheel
+     */
+    private static final long REQUEST_TIMEOUT_TICK_MILLIS = 10;
+    private static final int REQUEST_TIMEOUT_TICKS_PER_WHEEL = 512;
     /**
      * Identifier of the messaging bus
      */
     private final String identifier;
     /**
-     * Counter variable for the message ids
+     * Numeric origin used in the message ids
+     */
+    private final int origin;
+    /**
+     * A message of another message bus using the same origin was received and reported
      */
-    private final AtomicInteger messageIdCounter;
+    private volatile boolean originCollisionReported;
+    /**
+     * Sequence number of the last published message
+     */
+    private final AtomicLong messageSequence;
     /**
      * Value for any receiver
      */
@@ -43,6 +70,10 @@ public class MessageBusController implements MessageBus {
      */
     private final Receiver receiver;
     private final Forwarder forwarder;
+    /**
+     * Thread sending route advertisements to the neighbours or null, if route advertisements are disabled
+     */
+    private final ScheduledExecutorService routeAdvertiser;
 
     /**
      * Utility objects
@@ -51,6 +82,13 @@ public class MessageBusController implements MessageBus {
     private final MessageConverter messageConverter;
     private final MessageIdStorage messageIdStorage;
     private final MessageDeliverer deliverer;
+    private final MessageBusMetrics metrics;
+
+    /**
+     * Requests waiting for their reply by the message id of the request and the timeouts of the requests
+     */
+    private final Map<String, PendingRequest> pendingRequests;
+    private final TimeoutWheel requestTimeouts;
 
     /**
      * Standard time to live for a message package
@@ -62,36 +100,124 @@ public class MessageBusController implements MessageBus {
      */
     private final boolean forwardsMessages;
 
+    /**
+     * Share of published messages carrying a trace and the listener notified about received traces or null
+     */
+    private final double traceSampleRate;
+    private final TraceListener traceListener;
+
     private static Logger logger = LoggerFactory.getLogger(MessageBusController.class);
 
     /**
      * Constructor for a MessageBus. Nearly all the configuration happens with the constructor call.
      *
      * @param identifier        Unique identifier of the main application
+     * @param origin            Unique numeric origin used in the message ids
      * @param initialTimeToLive Standard amount of hops the package is allowed to make in total
      * @param serverPort        Desired port used for receiving messages from other applications
      * @param forwardsMessages  This message bus should forward messages to outgoing connections
+     * @param connectionSettings Configuration of the outgoing connections
+     * @param receiverSettings   Configuration of the receiver
+     * @param deliverySettings   Configuration of the message deliverer
+     * @param messageCodec       Codec used for encoding published messages
+     * @param traceSampleRate    Share of published messages carrying a trace
+     * @param traceListener      Listener for received traces or null
      * @throws IOException              when the message bus could not be created, because the network configuration is invalid
      * @throws IllegalArgumentException when the Identifier is not allowed
      */
-    MessageBusController(String identifier, int initialTimeToLive, int messageCapacity, int serverPort, boolean forwardsMessages) throws IOException, IllegalArgumentException {
+    MessageBusController(String identifier, int origin, int initialTimeToLive, int messageCapacity, int serverPort, boolean forwardsMessages, ConnectionSettings connectionSettings, ReceiverSettings receiverSettings,
+                         DeliverySettings deliverySettings, MessageCodec messageCodec, double traceSampleRate, TraceListener traceListener) throws IOException, IllegalArgumentException {
         if (identifier.equals(ANY_RECEIVER_STRING)) {
             throw new IllegalArgumentException("The identifier cannot be :" + ANY_RECEIVER_STRING);
         }
         this.identifier = identifier;
-        this.messageIdCounter = new AtomicInteger(0);
-        this.receiver = new Receiver(serverPort, this);
-        this.forwarder = new Forwarder();
+        this.origin = origin;
+        this.messageSequence = new AtomicLong(0);
+        this.metrics = new MessageBusMetrics();
+        this.receiver = Receiver.create(serverPort, this, receiverSettings);
+        this.forwarder = new Forwarder(connectionSettings, metrics);
 
         this.subscriptions = new SubscriptionService();
-        this.messageConverter = new MessageConverter(subscriptions);
+        this.messageConverter = new MessageConverter(subscriptions, messageCodec);
         this.initialTimeToLive = initialTimeToLive;
         this.forwardsMessages = forwardsMessages;
+        this.traceSampleRate = traceSampleRate;
+        this.traceListener = traceListener;
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.requestTimeouts = new TimeoutWheel("t-bus-request-timeouts", REQUEST_TIMEOUT_TICK_MILLIS, REQUEST_TIMEOUT_TICKS_PER_WHEEL);
 
         this.messageIdStorage = new MessageIdStorage(messageCapacity * MESSAGE_STORAGE_TO_ID_STORAGE_RATIO);
-        this.deliverer = new MessageDeliverer(messageCapacity);
+        this.deliverer = new MessageDeliverer(messageCapacity, deliverySettings, metrics);
+        metrics.registerGauges(forwarder::getQueueDepths, deliverer::getQueueDepth, messageIdStorage::size);
         deliverer.start();
         receiver.start();
+
+        long advertisementInterval = connectionSettings.getAdvertisementInterval();
+        if (advertisementInterval > 0) {
+            this.routeAdvertiser = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "t-bus-routing");
+                thread.setDaemon(true);
+                return thread;
+            });
+            routeAdvertiser.scheduleAtFixedRate(this::advertiseRoutes, 0, advertisementInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.routeAdvertiser = null;
+        }
+    }
+
+    /**
+     * Creates the identifier of the next message published by this message bus and remembers it, so the message is ignored when it comes back.
+     *
+     * @return Unique identifier of the message
+     */
+    private String nextMessageId() {
+        long sequence = messageSequence.incrementAndGet();
+        messageIdStorage.add(origin, sequence);
+        return MessageIds.format(origin, sequence);
+    }
+
+    /**
+     * Determines the time to live of a published message. If routes are advertised, the distance to the receiver is known,
+     * so the message is allowed exactly as many hops as necessary. Otherwise the configured time to live is used.
+     * Broadcasts never get less than the configured time to live, since the advertised distances only cover all message buses
+     * once the routes converged and only message buses advertising their routes.
+     *
+     * @param receiverId Unique receiverId of a peer or the value for any receiver
+     * @return Amount of hops the message is allowed to make
+     */
+    private int timeToLive(String receiverId) {
+        if (routeAdvertiser == null) {
+            return initialTimeToLive;
+        }
+        if (receiverId.equals(ANY_RECEIVER_STRING)) {
+            return Math.max(initialTimeToLive, forwarder.getMaxDistance());
+        }
+        int distance = forwarder.getDistance(receiverId);
+        return distance > 0 ? distance : initialTimeToLive;
+    }
+
+    /**
+     * Advertises the routes and subscriptions immediately, so a changed route or subscription reaches the other message buses without waiting for the next interval.
+     */
+    private void advertiseChange() {
+        if (routeAdvertiser != null) {
+            routeAdvertiser.execute(this::advertiseRoutes);
+        }
+    }
+
+    /**
+     * Sends the current routes and subscriptions to every neighbour. Advertisements are only sent one hop far.
+     */
+    private void advertiseRoutes() {
+        for (String neighbour : forwarder.getNeighbours()) {
+            try {
+                RouteAdvertisement advertisement = forwarder.createAdvertisement(neighbour, identifier, subscriptions.getMessageTypes(), forwardsMessages);
+                MessagePackage messagePackage = new MessagePackage(nextMessageId(), identifier, neighbour, RouteAdvertisement.MESSAGE_TYPE, 1, advertisement);
+                forwarder.sendTo(neighbour, messageConverter.encode(RouteAdvertisement.class, messagePackage));
+            } catch (Exception e) {
+                logger.debug("Could not advertise routes to {}.", neighbour, e);
+            }
+        }
     }
 
     /**
@@ -104,19 +230,101 @@ public class MessageBusController implements MessageBus {
      */
     @Override
     public void publishMessageTo(String receiverId, Class<?> messageType, Object message) {
-        String messageId = createMessageId();
-        messageIdStorage.add(messageId);
-        MessagePackage messagePackage = new MessagePackage(messageId, identifier, receiverId, messageType.getSimpleName(), initialTimeToLive, message);
         try {
-            String messageJson = messageConverter.convertToJson(messageType, messagePackage);
-            forwarder.forwardMessage(identifier, receiverId, messageJson);
+            publish(nextMessageId(), receiverId, messageType, message, null, null);
         } catch (Exception e) {
-            logger.debug("Could not publish message. An Exception occurred while sending.");
-            e.printStackTrace();
+            logger.debug("Could not publish message. An Exception occurred while sending.", e);
         }
         logger.debug("Published a message of type {}.", messageType.getSimpleName());
     }
 
+    /**
+     * Sends a request to a specific receiver. The request is correlated with its reply by its message id.
+     * Its timeout is kept in a timing wheel, so pending requests cost no scheduled task and no thread.
+     *
+     * @param receiverId  Unique receiverId of a peer
+     * @param messageType Class of the request object
+     * @param message     Request object. This object has to be an instance of the given messageType class
+     * @param replyType   Class of the expected reply
+     * @param timeout     Time in milliseconds to wait for the reply
+     * @param <Reply>     Type of the expected reply
+     * @return Future of the reply
+     * @see RequestHandler
+     */
+    @Override
+    public <Reply> CompletableFuture<Reply> request(String receiverId, Class<?> messageType, Object message, Class<Reply> replyType, long timeout) {
+        CompletableFuture<Reply> future = new CompletableFuture<>();
+        String messageId = nextMessageId();
+        PendingRequest request = new PendingRequest(future, replyType);
+        pendingRequests.put(messageId, request);
+        try {
+            request.timeout = requestTimeouts.schedule(() -> expireRequest(messageId, request), timeout);
+            publish(messageId, receiverId, messageType, message, identifier, null);
+        } catch (Exception e) {
+            if (pendingRequests.remove(messageId, request)) {
+                request.cancelTimeout();
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Encodes a message package and passes it to the forwarder. Sampled messages carry a trace.
+     *
+     * @param messageId     Unique identifier of the message
+     * @param receiverId    Unique receiverId of a peer or the value for any receiver
+     * @param messageType   Class of the message Object
+     * @param message       Message Object. This object has to be an instance of the given messageType class
+     * @param replyTo       Identifier of this message bus, if the message is a request, otherwise null
+     * @param correlationId Message id of the answered request, if the message is a reply, otherwise null
+     * @throws Exception Throws an exception, if the message can not be encoded
+     */
+    private void publish(String messageId, String receiverId, Class<?> messageType, Object message, String replyTo, String correlationId) throws Exception {
+        int timeToLive = timeToLive(receiverId);
+        MessageTrace trace = isSampled() ? new MessageTrace(MessageTrace.currentTimestamp(), timeToLive, null) : null;
+        MessagePackage messagePackage = new MessagePackage(messageId, identifier, receiverId, messageType.getSimpleName(), timeToLive, message, trace,
+                replyTo, correlationId);
+        OutboundMessage encodedMessage = messageConverter.encode(messageType, messagePackage);
+        forwarder.forwardMessage(identifier, identifier, receiverId, messagePackage.getMessageType(), encodedMessage);
+        metrics.getPublished().increment(messagePackage.getMessageType(), null);
+    }
+
+    /**
+     * Completes a request exceptionally, if its reply did not arrive in time. Called by the thread of the timeout wheel.
+     */
+    private void expireRequest(String messageId, PendingRequest request) {
+        if (pendingRequests.remove(messageId, request)) {
+            request.future.completeExceptionally(new TimeoutException("No reply to request " + messageId + " arrived in time."));
+        }
+    }
+
+    /**
+     * Completes the request answered by a received reply. Replies to unknown or expired requests are ignored.
+     *
+     * @param envelope Envelope of the received reply
+     */
+    private void completeRequest(MessageEnvelope envelope) {
+        PendingRequest request = pendingRequests.remove(envelope.getCorrelationId());
+        if (request == null) {
+            logger.trace("Ignored a reply to an unknown request.");
+            return;
+        }
+        request.cancelTimeout();
+        try {
+            request.future.complete(messageConverter.convertPayload(envelope, request.replyType));
+        } catch (Exception e) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Decides, whether a published message carries a trace. Without sampling, no random number is drawn.
+     */
+    private boolean isSampled() {
+        return traceSampleRate > 0 && (traceSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < traceSampleRate);
+    }
+
     /**
      * Allows to publish a message and therefore send the message to all outgoing connections. This message is used, if the message is not addressed to a specific receiver.
      *
@@ -137,6 +345,7 @@ public class MessageBusController implements MessageBus {
     @Override
     public void addMessageResponse(MessageHandler handler) {
         subscriptions.add(handler);
+        advertiseChange();
     }
 
     /**
@@ -147,6 +356,7 @@ public class MessageBusController implements MessageBus {
     @Override
     public void removeMessageResponse(Class<?> messageType) {
         subscriptions.remove(messageType);
+        advertiseChange();
     }
 
     /**
@@ -177,6 +387,37 @@ public class MessageBusController implements MessageBus {
     @Override
     public void removeConnection(String identifier) {
         forwarder.removeConnection(identifier);
+        advertiseChange();
+    }
+
+    /**
+     * Get the amount of messages waiting to be sent to each outgoing connection.
+     *
+     * @return Outbound queue depth for every identifier of a communication partner
+     */
+    @Override
+    public Map<String, Integer> getOutboundQueueDepths() {
+        return forwarder.getQueueDepths();
+    }
+
+    /**
+     * Get the amount of received messages, which were discarded, because the application could not keep up with delivering them.
+     *
+     * @return Amount of dropped messages since the creation of the message bus
+     */
+    @Override
+    public long getDroppedMessageCount() {
+        return deliverer.getDroppedMessageCount();
+    }
+
+    /**
+     * Get the metrics of the message bus, for example to bind them to a metrics library.
+     *
+     * @return Counters, queue depths and latency histograms of the message bus
+     */
+    @Override
+    public MessageBusMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -184,55 +425,177 @@ public class MessageBusController implements MessageBus {
      */
     @Override
     public void stop() {
+        if (routeAdvertiser != null) {
+            routeAdvertiser.shutdownNow();
+        }
         receiver.stopReceiving();
         deliverer.stopDelivering();
+        forwarder.close();
+        requestTimeouts.stop();
+        pendingRequests.forEach((messageId, request) -> {
+            if (pendingRequests.remove(messageId, request)) {
+                request.future.completeExceptionally(new IllegalStateException("The message bus was stopped."));
+            }
+        });
+    }
+
+    /**
+     * Checks, whether a received message was already processed, without parsing it.
+     *
+     * @return The message id was found and is already stored. If false, the message might still be a duplicate, which is detected after parsing.
+     */
+    private boolean isDuplicate(byte[] buffer, int offset, int length) {
+        long location = messageConverter.locateMessageId(buffer, offset, length);
+        if (location < 0) {
+            return false;
+        }
+        int idOffset = (int) (location >>> 32);
+        int idLength = (int) location;
+        return messageIdStorage.contains(MessageIds.origin(buffer, idOffset, idLength), MessageIds.sequence(buffer, idOffset, idLength));
     }
 
     /**
      * Internal function with the logic for processing of a received message. This method should only called by a Receiver object.
      *
-     * @param receivedMessage Received message in json format.
+     * @param receivedMessage Received message in any format known to the message converter
+     * @see Receiver
+     */
+    public void processMessage(byte[] receivedMessage) {
+        processMessage(receivedMessage, 0, receivedMessage.length);
+    }
+
+    /**
+     * Processes a received message inside a buffer of the receiver. Duplicates are rejected by their message id before any parsing,
+     * so they only cost a scan of the first bytes and one lookup in the message id storage. Other messages are copied out of the buffer and processed.
+     *
+     * @param buffer Buffer of the receiver, which may be reused after this method returned
+     * @param offset Position of the received message inside the buffer
+     * @param length Length of the received message
      * @see Receiver
      */
-    public void processMessage(String receivedMessage) {
+    public void processMessage(byte[] buffer, int offset, int length) {
+        long receiveNanos = System.nanoTime();
+        if (isDuplicate(buffer, offset, length)) {
+            metrics.getDeduplicated().increment(null, null);
+            logger.trace("Ignored a duplicate message before parsing it.");
+            return;
+        }
+        byte[] receivedMessage = offset == 0 && length == buffer.length ? buffer : Arrays.copyOfRange(buffer, offset, offset + length);
         logger.trace("Received a message from the receiver for processing.");
         try {
-            String messageId = messageConverter.getValue(receivedMessage, "messageId");
-            if (!messageIdStorage.contains(messageId)) { // Ignore already received messages
-                messageIdStorage.add(messageId);  // Ignore this message in the future
+            MessageEnvelope envelope = messageConverter.parse(receivedMessage);
+            metrics.recordParse(receiveNanos);
+            String messageId = envelope.getMessageId();
+            if (!messageIdStorage.add(messageId)) { // Ignore already received messages and this message in the future
+                metrics.getDeduplicated().increment(envelope.getMessageType(), envelope.getSenderId());
+            } else {
+                if (!originCollisionReported && MessageIds.origin(messageId) == origin && !identifier.equals(envelope.getPublisherId())) {
+                    originCollisionReported = true;
+                    logger.warn("Message bus {} uses the same origin {} in its message ids. Messages of both message buses may be discarded as duplicates. Set unique origins.",
+                            envelope.getPublisherId(), origin);
+                }
+                if (envelope.getMessageType().equals(RouteAdvertisement.MESSAGE_TYPE)) {
+                    // Control messages of the routing protocol are neither forwarded nor delivered
+                    if (routeAdvertiser != null && forwarder.applyAdvertisement(envelope.getSenderId(),
+                            messageConverter.convertPayload(envelope, RouteAdvertisement.class), identifier)) {
+                        advertiseChange();
+                    }
+                    return;
+                }
+                metrics.getReceived().increment(envelope.getMessageType(), envelope.getSenderId());
+                MessageTrace trace = envelope.getTrace();
+                long receiveTimestamp = trace != null ? MessageTrace.currentTimestamp() : 0;
+                if (trace != null) {
+                    metrics.recordTransit(trace.getOriginTimestamp(), receiveTimestamp);
+                }
+                // The first copy of a message arrives over the fastest path back to its publisher
+                forwarder.learnRoute(envelope.getPublisherId(), envelope.getSenderId());
                 // Decrement ttl
-                int ttl = Integer.parseInt(messageConverter.getValue(receivedMessage, "timeToLive")) - 1;
-                // Forward the message
-                if (forwardsMessages && ttl > 0) {
-                    // Update the message package values
-                    String senderId = messageConverter.getValue(receivedMessage, "senderId");
-                    String receiverId = messageConverter.getValue(receivedMessage, "receiverId");
-                    receivedMessage = messageConverter.setValue(receivedMessage, "timeToLive", String.valueOf(ttl));
-                    receivedMessage = messageConverter.setValue(receivedMessage, "senderId", identifier);
-                    // Let the forwarder forward this message
-                    forwarder.forwardMessage(senderId, receiverId, receivedMessage);
+                int ttl = envelope.getTimeToLive() - 1;
+                // Forward the message, unless it reached its receiver
+                if (forwardsMessages && ttl > 0 && !envelope.getReceiverId().equals(identifier)) {
+                    // Update the message package values and let the forwarder forward this message
+                    OutboundMessage forwardedMessage = trace != null
+                            ? messageConverter.convertToForwardedMessage(envelope, ttl, identifier, trace.withHop(receiveTimestamp, MessageTrace.currentTimestamp()))
+                            : messageConverter.convertToForwardedMessage(envelope, ttl, identifier);
+                    forwarder.forwardMessage(envelope.getSenderId(), envelope.getPublisherId(), envelope.getReceiverId(), envelope.getMessageType(), forwardedMessage);
+                    metrics.getForwarded().increment(envelope.getMessageType(), envelope.getSenderId());
+                    metrics.recordForward(receiveNanos);
                 }
-                // Check, if the application is interested in this message type
-                String messageType = messageConverter.getValue(receivedMessage, "messageType");
-                if (subscriptions.contains(messageType)) {
-                    MessagePackage messagePackage = messageConverter.convertToMessagePackage(receivedMessage);
-                    if (messagePackage.getReceiverId().equals(ANY_RECEIVER_STRING) || messagePackage.getReceiverId().equals(identifier)) {
-                        logger.debug("Letting the message deliverer handle the message from " + messagePackage.getSenderId() + ".");
-                        deliverer.deliverMessage(messagePackage.getMessage(), subscriptions.getHandler(messageType));
+                // Check, if the application is interested in this message type. Only then the wrapped message is parsed.
+                String messageType = envelope.getMessageType();
+                String receiverId = envelope.getReceiverId();
+                if (trace != null && traceListener != null && (receiverId.equals(ANY_RECEIVER_STRING) || receiverId.equals(identifier))) {
+                    traceListener.messageTraced(envelope.getMessageId(), messageType, trace, trace.getHopCount(envelope.getTimeToLive()), receiveTimestamp);
+                }
+                if (envelope.getCorrelationId() != null && receiverId.equals(identifier)) {
+                    // Replies are only passed to the waiting request, not to the message handlers
+                    completeRequest(envelope);
+                } else if (subscriptions.contains(messageType) && (receiverId.equals(ANY_RECEIVER_STRING) || receiverId.equals(identifier))) {
+                    MessageHandler handler = subscriptions.getHandler(messageType);
+                    Object message = messageConverter.convertPayload(envelope, handler.getType());
+                    if (handler instanceof RequestHandler && envelope.getReplyTo() != null) {
+                        handler = new ReplyingHandler((RequestHandler) handler, envelope.getReplyTo(), envelope.getMessageId());
                     }
+                    logger.debug("Letting the message deliverer handle the message from {}.", envelope.getSenderId());
+                    deliverer.deliverMessage(message, handler, envelope.getSenderId(), envelope.getPublisherId(), receiveNanos);
                 }
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.debug("Could not process a received message.", e);
         }
     }
 
     /**
-     * Internal function for generating message ids using the counter variable messageIdCounter
-     *
-     * @return Next message id
+     * A request waiting for its reply
      */
-    private String createMessageId() {
-        return identifier + ":" + messageIdCounter.incrementAndGet();
+    private static final class PendingRequest {
+        private final CompletableFuture<Object> future;
+        private final Class<?> replyType;
+        private volatile TimeoutWheel.Timeout timeout;
+
+        @SuppressWarnings("unchecked")
+        PendingRequest(CompletableFuture<?> future, Class<?> replyType) {
+            this.future = (CompletableFuture<Object>) future;
+            this.replyType = replyType;
+        }
+
+        void cancelTimeout() {
+            TimeoutWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        }
+    }
+
+    /**
+     * Handler delivering a single request to a request handler and sending its reply back to the requesting message bus.
+     * Replies are addressed to the requester, so they follow the route learned from the request instead of being flooded.
+     */
+    private final class ReplyingHandler extends MessageHandler<Object> {
+        private final RequestHandler<Object, Object> handler;
+        private final String requesterId;
+        private final String requestId;
+
+        @SuppressWarnings("unchecked")
+        ReplyingHandler(RequestHandler<?, ?> handler, String requesterId, String requestId) {
+            super(handler.getType());
+            this.handler = (RequestHandler<Object, Object>) handler;
+            this.requesterId = requesterId;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void receiveMessage(Object request) {
+            Object reply = handler.handleRequest(request);
+            if (reply == null) {
+                return;
+            }
+            try {
+                publish(nextMessageId(), requesterId, handler.getReplyType(), reply, null, requestId);
+            } catch (Exception e) {
+                logger.debug("Could not send the reply to request {}.", requestId, e);
+            }
+        }
     }
 }
@@ -1,5 +1,19 @@
 package mf;
 
+import network.BroadcastMode;
+import network.ConnectionSettings;
+import network.OverflowPolicy;
+import network.ReceiverSettings;
+import network.ReceiverType;
+import utilities.DeliveryOverflowPolicy;
+import utilities.DeliveryQueueType;
+import utilities.DeliverySettings;
+import utilities.JsonMessageCodec;
+import utilities.MessageCodec;
+import utilities.MessageIds;
+import utilities.ThreadingMode;
+import utilities.WaitStrategy;
+
 import java.io.IOException;
 import java.util.*;
 
@@ -15,13 +29,69 @@ public class MessageBusFactory {
     private static final int DEFAULT_SERVER_PORT = 5678;
     private static final int DEFAULT_MESSAGE_CAPACITY = 1000;
     private static final boolean FORWARDS_MESSAGES = true;
+    private static final boolean DEFAULT_PERSISTENT_CONNECTIONS = true;
+    private static final int DEFAULT_CONNECTIONS_PER_PEER = 1;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+    private static final long DEFAULT_INITIAL_RECONNECT_DELAY = 100;
+    private static final long DEFAULT_MAX_RECONNECT_DELAY = 10000;
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT = 1000;
+    private static final int DEFAULT_OUTBOUND_QUEUE_CAPACITY = 1000;
+    private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_NEWEST;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+    private static final long DEFAULT_BATCH_DELAY_MICROS = 0;
+    private static final long DEFAULT_ROUTE_TIMEOUT = 0;
+    /**
+     * Route timeout as multiple of the advertisement interval, if advertisements are enabled without setting a route timeout
+     */
+    private static final int ADVERTISEMENT_INTERVALS_PER_ROUTE_TIMEOUT = 5;
+    private static final long DEFAULT_ADVERTISEMENT_INTERVAL = 0;
+    private static final BroadcastMode DEFAULT_BROADCAST_MODE = BroadcastMode.FLOOD;
+    private static final ReceiverType DEFAULT_RECEIVER_TYPE = ReceiverType.BLOCKING;
+    private static final int DEFAULT_RECEIVER_THREADS = 2;
+    private static final int DEFAULT_RECEIVE_BUFFER_SIZE = 64 * 1024;
+    private static final MessageCodec DEFAULT_MESSAGE_CODEC = new JsonMessageCodec();
+    private static final int DEFAULT_DELIVERY_THREADS = 1;
+    private static final ThreadingMode DEFAULT_THREADING_MODE = ThreadingMode.PLATFORM;
+    private static final DeliveryOverflowPolicy DEFAULT_DELIVERY_OVERFLOW_POLICY = DeliveryOverflowPolicy.DROP;
+    private static final long DEFAULT_DELIVERY_SPILL_CAPACITY = 64L * 1024 * 1024;
+    private static final DeliveryQueueType DEFAULT_DELIVERY_QUEUE_TYPE = DeliveryQueueType.BLOCKING;
+    private static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.PARK;
+    private static final double DEFAULT_TRACE_SAMPLE_RATE = 0;
 
     // Configuration parameters for the message bus
     private String identifier;
+    private Integer originId;
     private int initialTimeToLive;
     private int serverPort;
     private int messageCapacity;
     private boolean forwardsMessages;
+    private boolean persistentConnections;
+    private int connectionsPerPeer;
+    private int connectTimeout;
+    private long initialReconnectDelay;
+    private long maxReconnectDelay;
+    private int handshakeTimeout;
+    private int outboundQueueCapacity;
+    private OverflowPolicy overflowPolicy;
+    private int maxBatchBytes;
+    private long batchDelayMicros;
+    private long routeTimeout;
+    private long advertisementInterval;
+    private BroadcastMode broadcastMode;
+    private ReceiverType receiverType;
+    private int receiverThreads;
+    private int receiveBufferSize;
+    private MessageCodec messageCodec;
+    private int deliveryThreads;
+    private final Map<String, Integer> handlerConcurrency;
+    private ThreadingMode threadingMode;
+    private DeliveryOverflowPolicy deliveryOverflowPolicy;
+    private long deliverySpillCapacity;
+    private DroppedMessageListener droppedMessageListener;
+    private DeliveryQueueType deliveryQueueType;
+    private WaitStrategy waitStrategy;
+    private double traceSampleRate;
+    private TraceListener traceListener;
 
     // store added message handlers, which are configured after instantiation
     private final Set<MessageHandler> messageHandlers;
@@ -35,6 +105,31 @@ public class MessageBusFactory {
         this.serverPort = DEFAULT_SERVER_PORT;
         this.messageCapacity = DEFAULT_MESSAGE_CAPACITY;
         this.forwardsMessages = FORWARDS_MESSAGES;
+        this.persistentConnections = DEFAULT_PERSISTENT_CONNECTIONS;
+        this.connectionsPerPeer = DEFAULT_CONNECTIONS_PER_PEER;
+        this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        this.initialReconnectDelay = DEFAULT_INITIAL_RECONNECT_DELAY;
+        this.maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+        this.handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+        this.outboundQueueCapacity = DEFAULT_OUTBOUND_QUEUE_CAPACITY;
+        this.overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+        this.maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+        this.batchDelayMicros = DEFAULT_BATCH_DELAY_MICROS;
+        this.routeTimeout = DEFAULT_ROUTE_TIMEOUT;
+        this.advertisementInterval = DEFAULT_ADVERTISEMENT_INTERVAL;
+        this.broadcastMode = DEFAULT_BROADCAST_MODE;
+        this.receiverType = DEFAULT_RECEIVER_TYPE;
+        this.receiverThreads = DEFAULT_RECEIVER_THREADS;
+        this.receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+        this.messageCodec = DEFAULT_MESSAGE_CODEC;
+        this.deliveryThreads = DEFAULT_DELIVERY_THREADS;
+        this.handlerConcurrency = new HashMap<>();
+        this.threadingMode = DEFAULT_THREADING_MODE;
+        this.deliveryOverflowPolicy = DEFAULT_DELIVERY_OVERFLOW_POLICY;
+        this.deliverySpillCapacity = DEFAULT_DELIVERY_SPILL_CAPACITY;
+        this.deliveryQueueType = DEFAULT_DELIVERY_QUEUE_TYPE;
+        this.waitStrategy = DEFAULT_WAIT_STRATEGY;
+        this.traceSampleRate = DEFAULT_TRACE_SAMPLE_RATE;
         this.messageHandlers = new HashSet<>();
     }
 
@@ -47,6 +142,18 @@ public class MessageBusFactory {
         this.identifier = identifier;
     }
 
+    /**
+     * Setter for the numeric origin used in the message ids of the message bus. The origin has to be unique among all connected message buses.
+     * If it is not set, the origin is a 32 bit hash of the identifier. Distinct identifiers may still share a hash,
+     * in which case the message buses discard some of each other's messages as duplicates. A message bus logs a warning, when it receives a message of another
+     * message bus with its own origin. Setting unique origins explicitly rules out such collisions.
+     *
+     * @param originId Unique numeric origin of the message bus
+     */
+    public void setOriginId(int originId) {
+        this.originId = originId;
+    }
+
 
     /**
      * Setter for the time to live parameter. This should be set to the maximal amount of hops a message could need from one point to the receiver.
@@ -85,6 +192,270 @@ public class MessageBusFactory {
         this.forwardsMessages = forwardsMessages;
     }
 
+    /**
+     * Setter for the boolean defining whether outgoing connections are kept open and reused for many messages.
+     * Otherwise a new socket is opened for every single message. Persistent connections use the framed protocol.
+     * Peers running an older framework version are detected during the handshake and receive one message per socket instead.
+     *
+     * @param persistentConnections Outgoing connections are kept open
+     */
+    public void setPersistentConnections(boolean persistentConnections) {
+        this.persistentConnections = persistentConnections;
+    }
+
+    /**
+     * Setter for the amount of writer threads sending messages to every peer. If persistent connections are enabled, every writer keeps its own connection open.
+     *
+     * @param connectionsPerPeer Amount of connections per peer
+     */
+    public void setConnectionsPerPeer(int connectionsPerPeer) {
+        this.connectionsPerPeer = connectionsPerPeer;
+    }
+
+    /**
+     * Setter for the timeout used when connecting to a peer.
+     *
+     * @param connectTimeout Timeout in milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Setter for the reconnection backoff of persistent connections. After every failed attempt the delay is doubled until the maximum is reached.
+     *
+     * @param initialReconnectDelay Delay in milliseconds after the first failure
+     * @param maxReconnectDelay     Maximal delay in milliseconds between two attempts
+     */
+    public void setReconnectDelay(long initialReconnectDelay, long maxReconnectDelay) {
+        this.initialReconnectDelay = initialReconnectDelay;
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    /**
+     * Setter for the time a newly opened persistent connection waits for the peer acknowledging the framed protocol.
+     * Peers not answering in time are treated as legacy peers, which receive one message per socket.
+     *
+     * @param handshakeTimeout Timeout in milliseconds
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    /**
+     * Setter for the capacity of the outbound queue of every peer. Published and forwarded messages wait in this queue, until a writer sends them.
+     *
+     * @param outboundQueueCapacity Maximal amount of queued messages per peer
+     */
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    /**
+     * Setter for the behaviour when the outbound queue of a peer is full.
+     * Blocking makes the publishing thread wait for the slowest peer, the other policies discard messages instead.
+     *
+     * @param overflowPolicy Policy applied to full outbound queues
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Setter for the size, at which a batch of messages is closed. Messages queued for a peer are written together on its persistent connection,
+     * which saves a system call per message. Larger batches raise the throughput, but every connection buffers up to one batch.
+     *
+     * @param maxBatchBytes Size of a batch in bytes
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Setter for the time a writer waits for further messages, before it writes an incomplete batch.
+     * By default, only messages already queued are batched, so no latency is added.
+     *
+     * @param batchDelayMicros Delay in microseconds
+     */
+    public void setBatchDelay(long batchDelayMicros) {
+        this.batchDelayMicros = batchDelayMicros;
+    }
+
+    /**
+     * Setter for the time a learned route stays valid without being confirmed by another message of the same publisher.
+     * Messages addressed to a message bus with a valid route are only sent to the next hop instead of all outgoing connections,
+     * as long as the next hop is reachable. Routing is disabled by default. If route advertisements are enabled without a route timeout,
+     * routes expire after five advertisement intervals.
+     *
+     * @param routeTimeout Timeout in milliseconds. Zero disables routing, so messages, which are not addressed to a neighbour, are always flooded.
+     */
+    public void setRouteTimeout(long routeTimeout) {
+        this.routeTimeout = routeTimeout;
+    }
+
+    /**
+     * Setter for the interval, in which the message bus advertises its routes to its neighbours. Every message bus then knows the shortest path to all others,
+     * so messages are routed instead of flooded and the time to live of published messages is derived from the distance to their receivers.
+     * The advertisements also contain the subscribed message types, so messages are only flooded to neighbours leading to interested message buses.
+     * All message buses of a network should use the same interval, which has to be shorter than the route timeout. Enabling advertisements also enables routing.
+     *
+     * @param advertisementInterval Interval in milliseconds. Zero disables route advertisements.
+     */
+    public void setRouteAdvertisementInterval(long advertisementInterval) {
+        this.advertisementInterval = advertisementInterval;
+    }
+
+    /**
+     * Setter for the way messages addressed to any receiver or to a message bus without a known route are spread.
+     * Flooding sends copies around every cycle of the network, which are discarded by the receivers.
+     * The spanning tree mode forwards every message only along the shortest path tree of its publisher and requires route advertisements.
+     *
+     * @param broadcastMode Flooding or spanning tree
+     */
+    public void setBroadcastMode(BroadcastMode broadcastMode) {
+        this.broadcastMode = broadcastMode;
+    }
+
+    /**
+     * Setter for the implementation used for receiving messages.
+     * The blocking receiver uses a thread per incoming connection, the NIO receiver serves all connections with a fixed number of event loop threads.
+     *
+     * @param receiverType Implementation of the receiver
+     */
+    public void setReceiverType(ReceiverType receiverType) {
+        this.receiverType = receiverType;
+    }
+
+    /**
+     * Setter for the amount of event loop threads of the NIO receiver. The amount of threads stays the same, no matter how many peers connect.
+     *
+     * @param receiverThreads Amount of event loop threads
+     */
+    public void setReceiverThreads(int receiverThreads) {
+        this.receiverThreads = receiverThreads;
+    }
+
+    /**
+     * Setter for the size of the read buffer of every event loop of the NIO receiver.
+     *
+     * @param receiveBufferSize Buffer size in bytes
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Setter for the codec used for encoding published messages. Received messages are decoded regardless of the codec of their sender,
+     * so message buses using different codecs can be connected. Peers running older versions of the framework only understand json.
+     *
+     * @param messageCodec Codec of published messages, for example the BinaryMessageCodec
+     */
+    public void setMessageCodec(MessageCodec messageCodec) {
+        this.messageCodec = messageCodec;
+    }
+
+    /**
+     * Setter for the amount of worker threads delivering received messages to the message handlers.
+     * Messages of the same type are always delivered by the same worker, so a slow handler only delays messages handled by its worker.
+     *
+     * @param deliveryThreads Amount of delivery worker threads
+     */
+    public void setDeliveryThreads(int deliveryThreads) {
+        this.deliveryThreads = deliveryThreads;
+    }
+
+    /**
+     * Setter for the amount of workers, which may call the handler of a message type at the same time. By default, a handler is only called by one worker.
+     * Messages of the same publisher are always delivered in order, so the handler has to be able to deal with concurrent calls for different publishers.
+     *
+     * @param messageType Class of the message type
+     * @param concurrency Amount of workers delivering the message type
+     */
+    public void setHandlerConcurrency(Class<?> messageType, int concurrency) {
+        this.handlerConcurrency.put(messageType.getSimpleName(), concurrency);
+    }
+
+    /**
+     * Setter for the kind of threads handling incoming connections of the blocking receiver and delivering messages to the message handlers.
+     * Virtual threads require Java 21 or newer. The event loops of the NIO receiver are always platform threads.
+     *
+     * @param threadingMode Platform or virtual threads
+     */
+    public void setThreadingMode(ThreadingMode threadingMode) {
+        this.threadingMode = threadingMode;
+    }
+
+    /**
+     * Setter for the behaviour, when a received message can not be queued for delivery, because the application does not keep up.
+     * Blocking slows down the peers, spilling buffers the messages on disk and dropping discards them. Dropped messages are counted in any case.
+     *
+     * @param deliveryOverflowPolicy Behaviour, when a delivery queue is full
+     */
+    public void setDeliveryOverflowPolicy(DeliveryOverflowPolicy deliveryOverflowPolicy) {
+        this.deliveryOverflowPolicy = deliveryOverflowPolicy;
+    }
+
+    /**
+     * Setter for the size of the disk buffer used by the spill policy. The buffer is shared equally by the delivery threads.
+     *
+     * @param deliverySpillCapacity Size of the disk buffer in bytes
+     */
+    public void setDeliverySpillCapacity(long deliverySpillCapacity) {
+        this.deliverySpillCapacity = deliverySpillCapacity;
+    }
+
+    /**
+     * Setter for a listener, which is notified about every received message discarded because of an overflow.
+     *
+     * @param droppedMessageListener Listener for discarded messages or null
+     */
+    public void setDroppedMessageListener(DroppedMessageListener droppedMessageListener) {
+        this.droppedMessageListener = droppedMessageListener;
+    }
+
+    /**
+     * Setter for the implementation of the queues between the receiving threads and the delivery threads.
+     * The ring buffer avoids locks and creates no objects per queued message, which lowers the latency at high message rates.
+     * The blocking queue creates a delivery object for every queued message.
+     *
+     * @param deliveryQueueType Blocking queue or ring buffer
+     */
+    public void setDeliveryQueueType(DeliveryQueueType deliveryQueueType) {
+        this.deliveryQueueType = deliveryQueueType;
+    }
+
+    /**
+     * Setter for the way delivery threads wait for messages on a ring buffer. Spinning reacts fastest, but occupies a CPU core per delivery thread.
+     *
+     * @param waitStrategy Busy spinning, yielding or parking
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Setter for the share of published messages, which carry a trace. Traced messages record the time they were published and the time every relay received
+     * and forwarded them, so the receiver knows where the time was spent. By default, no message is traced and no tracing fields are sent.
+     *
+     * @param traceSampleRate Share of traced messages between 0 and 1
+     */
+    public void setTraceSampleRate(double traceSampleRate) {
+        if (traceSampleRate < 0 || traceSampleRate > 1) {
+            throw new IllegalArgumentException("The trace sample rate has to be between 0 and 1.");
+        }
+        this.traceSampleRate = traceSampleRate;
+    }
+
+    /**
+     * Setter for a listener, which is notified about every received traced message addressed to this message bus.
+     * Messages are traced by their publisher, so the listener also receives traces of messages published by other message buses.
+     *
+     * @param traceListener Listener for traces or null
+     */
+    public void setTraceListener(TraceListener traceListener) {
+        this.traceListener = traceListener;
+    }
+
     /**
      * Message handlers can be added
      *
@@ -98,9 +469,20 @@ public class MessageBusFactory {
      *
      * @return Message bus object
      * @throws IOException              when the message bus could not be created, because the network configuration is invalid
-     * @throws IllegalArgumentException when the Identifier is not allowed
+     * @throws IllegalArgumentException when the Identifier is not allowed or virtual threads are not supported
      */
     public MessageBus create() throws IOException, IllegalArgumentException {
-        return new MessageBusController(identifier, initialTimeToLive, messageCapacity, serverPort, forwardsMessages);
+        if (threadingMode == ThreadingMode.VIRTUAL && !ThreadingMode.virtualThreadsSupported()) {
+            throw new IllegalArgumentException("Virtual threads require Java 21 or newer.");
+        }
+        ConnectionSettings connectionSettings = new ConnectionSettings(persistentConnections, connectionsPerPeer, connectTimeout, initialReconnectDelay, maxReconnectDelay, handshakeTimeout,
+                outboundQueueCapacity, overflowPolicy, maxBatchBytes, batchDelayMicros,
+                routeTimeout == 0 ? advertisementInterval * ADVERTISEMENT_INTERVALS_PER_ROUTE_TIMEOUT : routeTimeout, advertisementInterval, broadcastMode);
+        ReceiverSettings receiverSettings = new ReceiverSettings(receiverType, receiverThreads, receiveBufferSize, threadingMode);
+        DeliverySettings deliverySettings = new DeliverySettings(deliveryThreads, handlerConcurrency, threadingMode,
+                deliveryOverflowPolicy, deliverySpillCapacity, droppedMessageListener, deliveryQueueType, waitStrategy);
+        int origin = originId != null ? originId : MessageIds.defaultOrigin(identifier);
+        return new MessageBusController(identifier, origin, initialTimeToLive, messageCapacity, serverPort, forwardsMessages, connectionSettings, receiverSettings,
+                deliverySettings, messageCodec, traceSampleRate, traceListener);
     }
 }
@@ -1,10 +1,13 @@
 package mf;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * The MessagePackage class is used to wrap any java object inside a normed package and provide meta data for the propagation between peers.
+ * A sampled message package additionally carries a trace. Message packages without a trace do not contain any tracing fields on the wire.
+ * Requests name the message bus expecting the reply and replies name the message id of their request. Both fields are omitted on other message packages.
  *
  * @author Tobias Haider
  */
@@ -15,6 +18,9 @@ public class MessagePackage {
     private final String messageType;
     private final int timeToLive;
     private final Object message;
+    private final MessageTrace trace;
+    private final String replyTo;
+    private final String correlationId;
 
     /**
      * Constructor for a MessagePackage
@@ -25,10 +31,44 @@ public class MessagePackage {
      * @param timeToLive  Amount of hops the package is allowed to make
      * @param message     Actual message, that should be delivered to one or multiple receivers
      */
+    public MessagePackage(String messageId, String senderId, String receiverId, String messageType, int timeToLive, Object message) {
+        this(messageId, senderId, receiverId, messageType, timeToLive, message, null);
+    }
+
+    /**
+     * Constructor for a traced MessagePackage
+     *
+     * @param senderId    Unique identifier of the sender
+     * @param receiverId  Unique identifier of the sender
+     * @param messageType SimpleString representation of the message type
+     * @param timeToLive  Amount of hops the package is allowed to make
+     * @param message     Actual message, that should be delivered to one or multiple receivers
+     * @param trace       Timestamps of the message on its way or null, if the message is not traced
+     */
+    public MessagePackage(String messageId, String senderId, String receiverId, String messageType, int timeToLive, Object message, MessageTrace trace) {
+        this(messageId, senderId, receiverId, messageType, timeToLive, message, trace, null, null);
+    }
+
+    /**
+     * Constructor for a MessagePackage, which is part of a request and reply
+     *
+     * @param senderId      Unique identifier of the sender
+     * @param receiverId    Unique identifier of the sender
+     * @param messageType   SimpleString representation of the message type
+     * @param timeToLive    Amount of hops the package is allowed to make
+     * @param message       Actual message, that should be delivered to one or multiple receivers
+     * @param trace         Timestamps of the message on its way or null, if the message is not traced
+     * @param replyTo       Unique identifier of the message bus expecting a reply or null, if the message is not a request
+     * @param correlationId Message id of the answered request or null, if the message is not a reply
+     */
     @JsonCreator
     public MessagePackage(@JsonProperty("messageId") String messageId, @JsonProperty("senderId") String senderId, @JsonProperty("receiverId") String receiverId,
                           @JsonProperty("messageType") String messageType, @JsonProperty("timeToLive") int timeToLive,
-                          @JsonProperty("message") Object message) {
+                          @JsonProperty("message") Object message, @JsonProperty("trace") MessageTrace trace,
+                          @JsonProperty("replyTo") String replyTo, @JsonProperty("correlationId") String correlationId) {
+        this.trace = trace;
+        this.replyTo = replyTo;
+        this.correlationId = correlationId;
         this.messageId = messageId;
         this.senderId = senderId;
         this.receiverId = receiverId;
@@ -85,4 +125,30 @@ public class MessagePackage {
         return message;
     }
 
+    /**
+     * @return trace Timestamps of the message on its way or null, if the message is not traced
+     */
+    @JsonProperty("trace")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public MessageTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return Unique identifier of the message bus expecting a reply or null, if the message is not a request
+     */
+    @JsonProperty("replyTo")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    /**
+     * @return Message id of the answered request or null, if the message is not a reply
+     */
+    @JsonProperty("correlationId")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getCorrelationId() {
+        return correlationId;
+    }
 }
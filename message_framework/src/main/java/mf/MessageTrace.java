@@ -0,0 +1,127 @@
+package mf;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The MessageTrace class holds the timestamps of a sampled message on its way through the network of message buses.
+ * It contains the time the message was published and, for every relay, the time the relay received the message and the time it forwarded it.
+ * The amount of hops is derived from the time to live, so a trace passing relays of older framework versions still knows its hop count.
+ * <p>
+ * Timestamps are microseconds since the epoch taken from the wall clock of the respective message bus,
+ * so durations between different hosts are only as accurate as the synchronization of their clocks.
+ * Objects of this class are immutable. Relays append their hop by creating a new trace.
+ *
+ * @author Tobias Haider
+ * @see MessageBusFactory#setTraceSampleRate(double)
+ * @see TraceListener
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MessageTrace {
+    private static final long[] NO_HOPS = new long[0];
+
+    private final long originTimestamp;
+    private final int initialTimeToLive;
+    private final long[] hopTimestamps;
+
+    /**
+     * Constructor for a MessageTrace
+     *
+     * @param originTimestamp   Time the message was published in microseconds since the epoch
+     * @param initialTimeToLive Time to live the message was published with
+     * @param hopTimestamps     Receive and forward timestamp of every relay, alternating, or null, if no relay forwarded the message yet
+     */
+    @JsonCreator
+    public MessageTrace(@JsonProperty("origin") long originTimestamp, @JsonProperty("ttl") int initialTimeToLive, @JsonProperty("hops") long[] hopTimestamps) {
+        this.originTimestamp = originTimestamp;
+        this.initialTimeToLive = initialTimeToLive;
+        this.hopTimestamps = hopTimestamps != null ? hopTimestamps : NO_HOPS;
+    }
+
+    /**
+     * @return Current time of the wall clock in microseconds since the epoch
+     */
+    public static long currentTimestamp() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    /**
+     * Creates the trace forwarded by a relay.
+     *
+     * @param receiveTimestamp Time the relay received the message
+     * @param forwardTimestamp Time the relay forwarded the message
+     * @return Copy of this trace with the hop of the relay appended
+     */
+    public MessageTrace withHop(long receiveTimestamp, long forwardTimestamp) {
+        long[] hops = Arrays.copyOf(hopTimestamps, hopTimestamps.length + 2);
+        hops[hopTimestamps.length] = receiveTimestamp;
+        hops[hopTimestamps.length + 1] = forwardTimestamp;
+        return new MessageTrace(originTimestamp, initialTimeToLive, hops);
+    }
+
+    /**
+     * @return Time the message was published in microseconds since the epoch
+     */
+    @JsonProperty("origin")
+    public long getOriginTimestamp() {
+        return originTimestamp;
+    }
+
+    /**
+     * @return Time to live the message was published with
+     */
+    @JsonProperty("ttl")
+    public int getInitialTimeToLive() {
+        return initialTimeToLive;
+    }
+
+    /**
+     * @return Receive and forward timestamp of every relay, alternating
+     */
+    @JsonProperty("hops")
+    public long[] getHopTimestamps() {
+        return hopTimestamps.clone();
+    }
+
+    /**
+     * Derives the amount of hops a message made from its remaining time to live.
+     *
+     * The publisher sends the message with its initial time to live and every relay decrements it before forwarding.
+     *
+     * @param timeToLive Time to live of the received message
+     * @return Amount of message buses, which sent the message, including its publisher
+     */
+    public int getHopCount(int timeToLive) {
+        return initialTimeToLive - timeToLive + 1;
+    }
+
+    /**
+     * @return Amount of relays, which recorded their hop. Relays of older framework versions do not record hops.
+     */
+    @JsonIgnore
+    public int getRelayCount() {
+        return hopTimestamps.length / 2;
+    }
+
+    /**
+     * @param relay Index of the relay starting with the first relay after the publisher
+     * @return Time the relay received the message in microseconds since the epoch
+     */
+    public long getReceiveTimestamp(int relay) {
+        return hopTimestamps[relay * 2];
+    }
+
+    /**
+     * @param relay Index of the relay starting with the first relay after the publisher
+     * @return Time the relay forwarded the message in microseconds since the epoch
+     */
+    public long getForwardTimestamp(int relay) {
+        return hopTimestamps[relay * 2 + 1];
+    }
+}
@@ -0,0 +1,49 @@
+package mf;
+
+/**
+ * The RequestHandler class is implemented by the application in order to answer requests of other message buses.
+ * It is subscribed like any other message handler. The returned reply is sent back to the message bus, which sent the request,
+ * on the route the request took. Messages of the request type, which were published without expecting a reply, are handled without sending a reply.
+ *
+ * @author Tobias Haider
+ * @see MessageBus#request(String, Class, Object, Class, long)
+ */
+public abstract class RequestHandler<Request, Reply> extends MessageHandler<Request> {
+    private final Class<Reply> replyType;
+
+    /**
+     * Constructor for a RequestHandler
+     *
+     * @param requestType Class of the handled requests
+     * @param replyType   Class of the replies
+     */
+    protected RequestHandler(Class<Request> requestType, Class<Reply> replyType) {
+        super(requestType);
+        this.replyType = replyType;
+    }
+
+    /**
+     * This method allows the application to answer a received request. It is called by the delivery threads like any other message handler.
+     *
+     * @param request Incoming request from another application
+     * @return The reply or null, if no reply should be sent
+     */
+    public abstract Reply handleRequest(Request request);
+
+    /**
+     * Handles a message of the request type, which does not expect a reply.
+     *
+     * @param message Incoming message from other applications
+     */
+    @Override
+    public void receiveMessage(Request message) {
+        handleRequest(message);
+    }
+
+    /**
+     * @return Class of the replies
+     */
+    public Class<Reply> getReplyType() {
+        return replyType;
+    }
+}
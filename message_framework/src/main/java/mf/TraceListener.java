@@ -0,0 +1,25 @@
+package mf;
+
+/**
+ * The TraceListener interface can be implemented by the application in order to receive the traces of sampled messages,
+ * for example to export them to a tracing system.
+ *
+ * @author Tobias Haider
+ * @see MessageBusFactory#setTraceListener(TraceListener)
+ * @see MessageTrace
+ */
+@FunctionalInterface
+public interface TraceListener {
+
+    /**
+     * Called by the receiving thread for every received message carrying a trace, which is addressed to this message bus.
+     * Implementations should return quickly.
+     *
+     * @param messageId        Unique identifier of the message
+     * @param messageType      Simple name of the message type
+     * @param trace            Trace of the message up to the last relay
+     * @param hopCount         Amount of message buses, which sent the message, including its publisher
+     * @param receiveTimestamp Time this message bus received the message in microseconds since the epoch
+     */
+    void messageTraced(String messageId, String messageType, MessageTrace trace, int hopCount, long receiveTimestamp);
+}
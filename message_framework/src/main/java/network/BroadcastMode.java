@@ -0,0 +1,19 @@
+package network;
+
+/**
+ * Way messages are spread, which are addressed to any receiver or to a message bus without a known route.
+ *
+ * @author Tobias Haider
+ * @see Forwarder
+ */
+public enum BroadcastMode {
+    /**
+     * Every message bus forwards the message to all its neighbours except the sender. Copies travelling around cycles are discarded by the receivers.
+     */
+    FLOOD,
+    /**
+     * The message is forwarded along the shortest path tree rooted at its publisher, so every message bus receives it once.
+     * A message bus only forwards the message to the neighbours, which route towards the publisher over it. Requires route advertisements.
+     */
+    SPANNING_TREE
+}
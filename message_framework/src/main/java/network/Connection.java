@@ -0,0 +1,210 @@
+package network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+/**
+ * A long-lived client connection to a peer. The socket is opened lazily and reopened after failures.
+ * Reconnection attempts are delayed with an exponential backoff, so an unavailable peer is not hammered with connection requests.
+ * Every newly opened socket negotiates the framed protocol with the peer, before messages are sent as frames.
+ * A peer is only considered a legacy peer, if it answers the preface with something else than an acknowledgement
+ * or if it accepts several connections in a row without ever answering, since legacy receivers read until the connection is closed.
+ * A single handshake timeout, a closed connection or a reset are ordinary failures, which are retried after the reconnection delay.
+ * The frames of a batch of messages are gathered in the buffer of the connection and written to the socket with a single flush.
+ *
+ * @author Tobias Haider
+ * @see Sender
+ */
+class Connection {
+    private static final int MIN_BUFFER_SIZE = 8192;
+    /**
+     * Amount of handshakes in a row, which have to time out, before a peer is considered a legacy peer
+     */
+    static final int LEGACY_HANDSHAKE_TIMEOUTS = 3;
+
+    private final String ip;
+    private final int port;
+    private final ConnectionSettings settings;
+
+    private Socket socket;
+    private OutputStream out;
+    private byte version;
+    private long reconnectDelay;
+    private long nextConnectAttempt;
+    private int handshakeTimeouts;
+    private boolean legacy;
+
+    private static Logger logger = LoggerFactory.getLogger(Connection.class);
+
+    /**
+     * Constructor for a connection. No socket is opened until the first message is sent.
+     *
+     * @param ip       IP address of the peer
+     * @param port     Port number of the peer
+     * @param settings Configuration of the connection
+     */
+    Connection(String ip, int port, ConnectionSettings settings) {
+        this.ip = ip;
+        this.port = port;
+        this.settings = settings;
+        this.reconnectDelay = settings.getInitialReconnectDelay();
+        this.nextConnectAttempt = 0;
+    }
+
+    /**
+     * Sends a batch of messages over the connection. A stale connection, which was closed by the peer in the meantime, is reopened once
+     * and the whole batch is sent again. Receivers discard messages, which they already received.
+     *
+     * @param batch Messages that should be sent
+     * @throws IOException when the peer is not reachable or the connection is still backing off
+     * @throws LegacyPeerException when the peer does not support the framed protocol
+     */
+    synchronized void send(List<OutboundMessage> batch) throws IOException {
+        boolean reused = isOpen();
+        try {
+            write(batch);
+        } catch (LegacyPeerException e) {
+            throw e;
+        } catch (IOException e) {
+            close();
+            if (!reused) {
+                throw e;
+            }
+            logger.trace("Persistent connection to {}:{} was lost. Reconnecting.", ip, port);
+            write(batch);
+        }
+    }
+
+    /**
+     * Writes every message as a frame to the socket, which is opened if necessary. The stream is flushed once after the last frame.
+     */
+    private void write(List<OutboundMessage> batch) throws IOException {
+        ensureConnected();
+        for (OutboundMessage message : batch) {
+            WireProtocol.writeFrame(out, version, WireProtocol.NO_FLAGS, message);
+        }
+        out.flush();
+    }
+
+    /**
+     * Opens the socket and negotiates the framed protocol, if it is not open already. Failed attempts increase the delay until the next attempt.
+     *
+     * @throws IOException when the socket could not be opened or the reconnection delay has not passed yet
+     * @throws LegacyPeerException when the peer accepted the connection, but did not acknowledge the framed protocol.
+     *                             A peer detected as legacy peer before is detected again with the first handshake timeout.
+     */
+    private void ensureConnected() throws IOException {
+        if (isOpen()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextConnectAttempt) {
+            throw new IOException("Connection to " + ip + ":" + port + " is backing off after a failure.");
+        }
+        Socket candidate = new Socket();
+        try {
+            candidate.setTcpNoDelay(true);
+            candidate.setKeepAlive(true);
+            candidate.connect(new InetSocketAddress(ip, port), settings.getConnectTimeout());
+        } catch (IOException e) {
+            candidate.close();
+            backOff(now);
+            throw e;
+        }
+        OutputStream candidateOut = new BufferedOutputStream(candidate.getOutputStream(), Math.max(settings.getMaxBatchBytes(), MIN_BUFFER_SIZE));
+        try {
+            candidate.setSoTimeout(settings.getHandshakeTimeout());
+            InputStream candidateIn = candidate.getInputStream();
+            version = WireProtocol.negotiate(candidateOut, candidateIn);
+            candidate.setSoTimeout(0);
+        } catch (WireProtocol.ProtocolException e) {
+            candidate.close();
+            throw legacyPeer(e);
+        } catch (SocketTimeoutException e) {
+            candidate.close();
+            if (++handshakeTimeouts >= (legacy ? 1 : LEGACY_HANDSHAKE_TIMEOUTS)) {
+                throw legacyPeer(e);
+            }
+            backOff(now);
+            throw e;
+        } catch (IOException e) {
+            candidate.close();
+            handshakeTimeouts = 0;
+            backOff(now);
+            throw e;
+        }
+        handshakeTimeouts = 0;
+        legacy = false;
+        socket = candidate;
+        out = candidateOut;
+        reconnectDelay = settings.getInitialReconnectDelay();
+        nextConnectAttempt = 0;
+        logger.debug("Opened persistent connection to {}:{} using protocol version {}.", ip, port, version);
+    }
+
+    /**
+     * Delays the next connection attempt after a failure. The delay doubles with every failure up to the maximum delay.
+     */
+    private void backOff(long now) {
+        nextConnectAttempt = now + reconnectDelay;
+        reconnectDelay = Math.min(reconnectDelay * 2, settings.getMaxReconnectDelay());
+    }
+
+    /**
+     * Remembers, that the peer was detected as legacy peer, so it is detected again faster, when it is probed next time.
+     */
+    private LegacyPeerException legacyPeer(IOException cause) {
+        handshakeTimeouts = 0;
+        legacy = true;
+        return new LegacyPeerException(ip, port, cause);
+    }
+
+    /**
+     * @return Time in milliseconds until the next connection attempt is allowed
+     */
+    synchronized long getRemainingReconnectDelay() {
+        return Math.max(0, nextConnectAttempt - System.currentTimeMillis());
+    }
+
+    /**
+     * @return The socket is currently open
+     */
+    synchronized boolean isOpen() {
+        return socket != null && !socket.isClosed();
+    }
+
+    /**
+     * Closes the socket. The next message sent over this connection will open a new one.
+     */
+    synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.trace("There occurred an error while closing a persistent connection.", e);
+            }
+            socket = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Signals, that a peer only understands the legacy protocol with one message per socket.
+     */
+    static class LegacyPeerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        LegacyPeerException(String ip, int port, Throwable cause) {
+            super("Peer " + ip + ":" + port + " does not support the framed protocol.", cause);
+        }
+    }
+}
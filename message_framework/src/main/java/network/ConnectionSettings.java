@@ -0,0 +1,165 @@
+package network;
+
+/**
+ * The ConnectionSettings class bundles the configuration of all outgoing connections of a message bus.
+ * Objects of this class are immutable and are created by the MessageBusFactory.
+ *
+ * @author Tobias Haider
+ * @see Sender
+ */
+public class ConnectionSettings {
+    private final boolean persistent;
+    private final int connectionsPerPeer;
+    private final int connectTimeout;
+    private final long initialReconnectDelay;
+    private final long maxReconnectDelay;
+    private final int handshakeTimeout;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatchBytes;
+    private final long batchDelayMicros;
+    private final long routeTimeout;
+    private final long advertisementInterval;
+    private final BroadcastMode broadcastMode;
+
+    /**
+     * Constructor for the connection settings.
+     *
+     * @param persistent            Senders keep long-lived connections instead of opening a socket per message
+     * @param connectionsPerPeer    Amount of writer threads and persistent connections per peer
+     * @param connectTimeout        Timeout in milliseconds for establishing a connection
+     * @param initialReconnectDelay Delay in milliseconds before the first reconnection attempt after a failure
+     * @param maxReconnectDelay     Upper bound in milliseconds for the exponentially growing reconnection delay
+     * @param handshakeTimeout      Time in milliseconds to wait for a peer acknowledging the framed protocol, before the attempt counts as a timeout. Repeated timeouts mark the peer as legacy peer
+     * @param queueCapacity         Maximal amount of messages waiting to be sent to a single peer
+     * @param overflowPolicy        Behaviour when a message is sent to a peer, whose queue is full
+     * @param maxBatchBytes         Size in bytes, at which a batch of messages written together on a persistent connection is closed
+     * @param batchDelayMicros      Time in microseconds a writer waits for further messages, before an incomplete batch is written
+     * @param routeTimeout          Time in milliseconds after which a learned route expires. Zero disables routing, so messages are always flooded.
+     * @param advertisementInterval Time in milliseconds between two route advertisements to the neighbours. Zero disables route advertisements.
+     * @param broadcastMode         Way messages without a known route are spread
+     */
+    public ConnectionSettings(boolean persistent, int connectionsPerPeer, int connectTimeout, long initialReconnectDelay, long maxReconnectDelay, int handshakeTimeout,
+                              int queueCapacity, OverflowPolicy overflowPolicy, int maxBatchBytes, long batchDelayMicros, long routeTimeout,
+                              long advertisementInterval, BroadcastMode broadcastMode) {
+        if (connectionsPerPeer < 1) {
+            throw new IllegalArgumentException("At least one connection per peer is required.");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The outbound queue capacity has to be positive.");
+        }
+        if (maxBatchBytes < 1 || batchDelayMicros < 0) {
+            throw new IllegalArgumentException("The batch size has to be positive and the batch delay must not be negative.");
+        }
+        if (advertisementInterval > 0 && routeTimeout <= advertisementInterval) {
+            throw new IllegalArgumentException("Routes have to stay valid longer than the interval between two route advertisements.");
+        }
+        if (broadcastMode == BroadcastMode.SPANNING_TREE && advertisementInterval <= 0) {
+            throw new IllegalArgumentException("Spanning tree broadcasts require route advertisements.");
+        }
+        this.persistent = persistent;
+        this.connectionsPerPeer = connectionsPerPeer;
+        this.connectTimeout = connectTimeout;
+        this.initialReconnectDelay = initialReconnectDelay;
+        this.maxReconnectDelay = Math.max(initialReconnectDelay, maxReconnectDelay);
+        this.handshakeTimeout = handshakeTimeout;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxBatchBytes = maxBatchBytes;
+        this.batchDelayMicros = batchDelayMicros;
+        this.routeTimeout = routeTimeout;
+        this.advertisementInterval = advertisementInterval;
+        this.broadcastMode = broadcastMode;
+    }
+
+    /**
+     * @return Writers of a sender keep long-lived connections to their peers
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * @return Amount of writer threads and persistent connections per peer
+     */
+    public int getConnectionsPerPeer() {
+        return connectionsPerPeer;
+    }
+
+    /**
+     * @return Timeout in milliseconds for establishing a connection
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @return Delay in milliseconds before the first reconnection attempt
+     */
+    public long getInitialReconnectDelay() {
+        return initialReconnectDelay;
+    }
+
+    /**
+     * @return Upper bound in milliseconds for the reconnection delay
+     */
+    public long getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    /**
+     * @return Time in milliseconds to wait for the acknowledgement of the framed protocol
+     */
+    public int getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    /**
+     * @return Maximal amount of messages waiting to be sent to a single peer
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return Behaviour when a message is sent to a peer, whose queue is full
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return Size in bytes, at which a batch of messages is closed
+     */
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * @return Time in microseconds a writer waits for further messages of a batch
+     */
+    public long getBatchDelayMicros() {
+        return batchDelayMicros;
+    }
+
+    /**
+     * @return Time in milliseconds after which a learned route expires. Zero, if routing is disabled.
+     */
+    public long getRouteTimeout() {
+        return routeTimeout;
+    }
+
+    /**
+     * @return Time in milliseconds between two route advertisements. Zero, if route advertisements are disabled.
+     */
+    public long getAdvertisementInterval() {
+        return advertisementInterval;
+    }
+
+    /**
+     * @return Way messages without a known route are spread
+     */
+    public BroadcastMode getBroadcastMode() {
+        return broadcastMode;
+    }
+}
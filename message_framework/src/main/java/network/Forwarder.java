@@ -2,26 +2,64 @@ package network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utilities.MessageBusMetrics;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The forwarder represents an abstraction for all outgoing network connections from the message bus. It implements the basic routing algorithm. All real networking tasks are forwarded to the sender.
+ * Messages addressed to a neighbour are sent to it directly. Messages addressed to a message bus further away are sent to the next hop of a learned route.
+ * Only if no route is known, the message is flooded to all neighbours.
+ * Routes are learned from received messages and, if enabled, from the route advertisements exchanged between neighbours.
+ * Advertisements also tell, which message types are subscribed behind a neighbour, so flooded messages are not sent to neighbours without interested message buses.
+ * In the spanning tree broadcast mode, flooded messages are additionally only sent along the shortest path tree rooted at their publisher.
+ * The tree is repaired with the next advertisements, when a connection is removed or the routes over a failed neighbour expire.
+ * Every copy queued for a neighbour is counted in the metrics of the message bus.
  *
  * @author Tobias Haider
  * @see Sender
+ * @see RoutingTable
+ * @see SubscriptionTable
  */
 public class Forwarder {
     private final Map<String, Sender> senders;
+    private final ConnectionSettings settings;
+    private final RoutingTable routingTable;
+    private final SubscriptionTable subscriptionTable;
+    private final MessageBusMetrics metrics;
 
     private static Logger logger = LoggerFactory.getLogger(Forwarder.class);
+    /**
+     * Value for any receiver
+     */
+    private static final String ANY_RECEIVER_STRING = "any";
 
     /**
      * Constructor for the forwarder. Simply instantiates an empty hash map for internally storing sender objects.
+     *
+     * @param settings Configuration used for all outgoing connections
      */
-    public Forwarder() {
-        senders = new ConcurrentHashMap<>();
+    public Forwarder(ConnectionSettings settings) {
+        this(settings, new MessageBusMetrics());
+    }
+
+    /**
+     * Constructor for the forwarder recording into the metrics of a message bus.
+     *
+     * @param settings Configuration used for all outgoing connections
+     * @param metrics  Metrics of the message bus
+     */
+    public Forwarder(ConnectionSettings settings, MessageBusMetrics metrics) {
+        this.senders = new ConcurrentHashMap<>();
+        this.settings = settings;
+        this.routingTable = settings.getRouteTimeout() > 0 ? new RoutingTable(settings.getRouteTimeout()) : null;
+        this.subscriptionTable = settings.getAdvertisementInterval() > 0 ? new SubscriptionTable(settings.getRouteTimeout()) : null;
+        this.metrics = metrics;
     }
 
     /**
@@ -32,8 +70,12 @@ public class Forwarder {
      * @param port       Port number of the outgoing connection
      */
     public void addConnection(String identifier, String ip, int port) {
-        senders.put(identifier, new Sender(ip, port));
-
+        Sender previous = senders.put(identifier, new Sender(identifier, ip, port, settings, metrics));
+        if (previous != null) {
+            previous.close();
+        } else {
+            metrics.outboundPeerAdded(identifier);
+        }
     }
 
     /**
@@ -51,25 +93,172 @@ public class Forwarder {
      * @param identifier Identifier of a communication partner
      */
     public void removeConnection(String identifier) {
-        senders.remove(identifier);
+        Sender sender = senders.remove(identifier);
+        if (sender != null) {
+            sender.close();
+        }
+        if (routingTable != null) {
+            routingTable.removeNextHop(identifier);
+        }
+        if (subscriptionTable != null) {
+            subscriptionTable.remove(identifier);
+        }
     }
 
     /**
-     * Internal function used for forwarding messages to all outgoing connections.
+     * Learns the route towards the publisher of a received message. Messages are only routed over neighbours with an outgoing connection.
      *
-     * @param senderId   The sender to which the message should not be forwarded
-     * @param receiverId The receiver which should get the message
-     * @param message    Message received and to be forwarded to outgoing connections.
-     * @see Sender
+     * @param publisherId Identifier of the message bus, which published the message
+     * @param senderId    Identifier of the neighbour, which delivered the message
      */
-    public void forwardMessage(String senderId, String receiverId, String message) {
+    public void learnRoute(String publisherId, String senderId) {
+        if (routingTable != null && !publisherId.isEmpty() && !publisherId.equals(senderId) && senders.containsKey(senderId)) {
+            routingTable.learn(publisherId, senderId);
+        }
+    }
+
+    /**
+     * Applies the route advertisement of a neighbour. Advertisements of message buses without an outgoing connection are ignored,
+     * since no message could be routed over them.
+     *
+     * @param senderId      Identifier of the advertising neighbour
+     * @param advertisement Distances from the neighbour to the message buses it can reach
+     * @param self          Identifier of this message bus
+     * @return The routes or the message types subscribed behind the neighbour changed, so the own advertisements changed as well
+     */
+    public boolean applyAdvertisement(String senderId, RouteAdvertisement advertisement, String self) {
+        if (!senders.containsKey(senderId)) {
+            return false;
+        }
+        boolean changed = routingTable != null && routingTable.update(senderId, advertisement.getDistances(), self);
+        if (subscriptionTable != null && advertisement.getSubscriptions() != null) {
+            changed |= subscriptionTable.update(senderId, advertisement.getSubscriptions(), self);
+        }
+        return changed;
+    }
+
+    /**
+     * Creates the route advertisement for a neighbour.
+     *
+     * @param neighbour    Identifier of the neighbour receiving the advertisement
+     * @param self         Identifier of this message bus
+     * @param messageTypes Message types subscribed by this message bus
+     * @param forwards     This message bus forwards messages, so the subscriptions of the message buses behind the other neighbours are advertised as well
+     * @return Distances to all reachable message buses and their subscriptions
+     */
+    public RouteAdvertisement createAdvertisement(String neighbour, String self, Set<String> messageTypes, boolean forwards) {
+        Map<String, RouteAdvertisement.Subscription> subscriptions = subscriptionTable != null ? subscriptionTable.advertisement(neighbour, self, messageTypes, forwards)
+                : Collections.singletonMap(self, new RouteAdvertisement.Subscription(0, messageTypes));
+        Map<String, Integer> distances = routingTable != null ? routingTable.advertisement(neighbour, self) : Collections.singletonMap(self, 0);
+        return new RouteAdvertisement(distances, subscriptions);
+    }
+
+    /**
+     * Getter for the amount of hops to a message bus
+     *
+     * @param receiverId Identifier of the message bus
+     * @return Distance to the message bus or -1, if it is unknown
+     */
+    public int getDistance(String receiverId) {
         if (senders.containsKey(receiverId)) {
+            return 1;
+        }
+        return routingTable != null ? routingTable.distance(receiverId) : RoutingTable.UNKNOWN_DISTANCE;
+    }
+
+    /**
+     * Getter for the amount of hops to the farthest message bus with an advertised distance
+     *
+     * @return Largest advertised distance or -1, if no distance was advertised
+     */
+    public int getMaxDistance() {
+        return routingTable != null ? routingTable.maxDistance() : RoutingTable.UNKNOWN_DISTANCE;
+    }
+
+    /**
+     * @return Identifiers of all communication partners with an outgoing connection
+     */
+    public Set<String> getNeighbours() {
+        return new HashSet<>(senders.keySet());
+    }
+
+    /**
+     * Sends a message only to a single neighbour.
+     *
+     * @param identifier Identifier of the neighbour
+     * @param message    Message to be sent
+     */
+    public void sendTo(String identifier, OutboundMessage message) {
+        Sender sender = senders.get(identifier);
+        if (sender != null) {
+            sender.sendMessage(message);
+        }
+    }
+
+    /**
+     * Closes all outgoing connections and stops their writer threads.
+     */
+    public void close() {
+        senders.values().forEach(Sender::close);
+        senders.clear();
+    }
+
+    /**
+     * Getter for the amount of messages waiting to be sent to each peer
+     *
+     * @return Depth of the outbound queue of every outgoing connection
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        senders.forEach((identifier, sender) -> depths.put(identifier, sender.getQueueDepth()));
+        return depths;
+    }
+
+    /**
+     * Internal function used for forwarding messages to outgoing connections.
+     * Messages are only queued at the senders, so this method does not wait for the network.
+     *
+     * @param senderId    The sender to which the message should not be forwarded
+     * @param publisherId The message bus, which published the message, or an empty string, if it is unknown
+     * @param receiverId  The receiver which should get the message
+     * @param messageType Simple name of the message type
+     * @param message     Message received and to be forwarded to outgoing connections. The same object is queued for all of them.
+     * @see Sender
+     */
+    public void forwardMessage(String senderId, String publisherId, String receiverId, String messageType, OutboundMessage message) {
+        Sender neighbour = senders.get(receiverId);
+        if (neighbour != null) {
             // Receiver is neighbour. Send message only to one this peer.
-            senders.get(receiverId).sendMessage(message);
+            send(receiverId, neighbour, messageType, message);
+            return;
+        }
+        String nextHop = routingTable != null ? routingTable.nextHop(receiverId) : null;
+        Sender router = nextHop != null && !nextHop.equals(senderId) ? senders.get(nextHop) : null;
+        if (router != null && router.isReachable()) {
+            // A route towards the receiver is known and the next hop can be reached. Send message only to the next hop.
+            send(nextHop, router, messageType, message);
+            logger.trace("Routing a message for {} over {}.", receiverId, nextHop);
         } else {
-            // Receiver is not a neighbour. Send message to all peers except for sender.
-            senders.entrySet().stream().filter(sender -> !sender.getKey().equals(senderId)).forEach(sender -> sender.getValue().sendMessage(message));
+            // Receiver is not a neighbour. Send message to all peers except for sender, which lead to a message bus interested in the message type.
+            // Messages addressed to a single receiver, like replies, are sent to all peers, since the receiver does not need to subscribe their type.
+            boolean pruned = subscriptionTable != null && receiverId.equals(ANY_RECEIVER_STRING);
+            boolean spanningTree = settings.getBroadcastMode() == BroadcastMode.SPANNING_TREE && !publisherId.isEmpty();
+            senders.forEach((identifier, sender) -> {
+                if (!identifier.equals(senderId) && (!pruned || subscriptionTable.isInterested(identifier, messageType))
+                        && (!spanningTree || routingTable.isChild(identifier, publisherId))) {
+                    send(identifier, sender, messageType, message);
+                }
+            });
+            logger.trace("Forwarding a message to all outgoing connections.");
+        }
+    }
+
+    /**
+     * Queues a message at the sender of a neighbour and counts the queued copy.
+     */
+    private void send(String identifier, Sender sender, String messageType, OutboundMessage message) {
+        if (sender.sendMessage(message)) {
+            metrics.getSent().increment(messageType, identifier);
         }
-        logger.trace("Forwarding a message to all outgoing connections.");
     }
 }
@@ -0,0 +1,421 @@
+package network;
+
+import mf.MessageBusController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The NioReceiver class is an abstraction for a non-blocking server socket channel.
+ * All incoming connections are multiplexed onto a fixed number of event loop threads, so the amount of threads does not depend on the amount of peers.
+ * Every event loop reads into its own reusable heap buffer. Complete frames are passed to the message bus straight out of this buffer,
+ * only the bytes of incomplete frames and the messages of legacy connections are copied into a buffer of the connection.
+ *
+ * @author Tobias Haider
+ * @see SocketReceiver
+ * @see WireProtocol
+ */
+public class NioReceiver implements Receiver {
+    private final int serverPort;
+    private final MessageBusController messageBusController;
+    private final EventLoop[] eventLoops;
+    private final int bufferSize;
+    private volatile boolean running;
+    private ServerSocketChannel serverChannel;
+
+    private static Logger logger = LoggerFactory.getLogger(NioReceiver.class);
+
+    /**
+     * Constructor for NioReceiver. Delivers an abstraction for a non-blocking server socket.
+     *
+     * @param serverPort           Server port to which the receiver should listen
+     * @param messageBusController Message bus object to which received message should be passed on
+     * @param threads              Amount of event loop threads serving the connections
+     * @param bufferSize           Size in bytes of the read buffer of every event loop
+     */
+    public NioReceiver(int serverPort, MessageBusController messageBusController, int threads, int bufferSize) {
+        this.serverPort = serverPort;
+        this.messageBusController = messageBusController;
+        this.eventLoops = new EventLoop[threads];
+        this.bufferSize = bufferSize;
+        running = false;
+    }
+
+    /**
+     * Method used to start the receiver and therefore start listening to incoming messages .
+     *
+     * @throws IOException Throws an exception, if the server socket channel could not be instantiated
+     */
+    @Override
+    public void start() throws IOException {
+        running = true;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(serverPort), CONNECTION_BACKLOG);
+        serverChannel.configureBlocking(false);
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+        }
+        // The first event loop also accepts new connections
+        serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread thread = new Thread(eventLoops[i], "t-bus-receiver-" + serverPort + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.debug("Receiver is now listening to incoming messages at port {} using {} event loops.", serverPort, eventLoops.length);
+    }
+
+    /**
+     * Method used to stop the receiver and therefore stop listening to incoming messages .
+     */
+    @Override
+    public void stopReceiving() {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * A thread serving a subset of all connections with a single selector.
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final ByteBuffer readBuffer;
+        private final Queue<SocketChannel> pendingChannels;
+        private int nextEventLoop;
+
+        /**
+         * Constructor for an event loop.
+         *
+         * @param selector Selector used for all connections of this event loop
+         */
+        EventLoop(Selector selector) {
+            this.selector = selector;
+            this.readBuffer = ByteBuffer.allocate(bufferSize);
+            this.pendingChannels = new ConcurrentLinkedQueue<>();
+            this.nextEventLoop = 0;
+        }
+
+        /**
+         * Task of the event loop. Waits for events on the selector until the receiver is stopped.
+         */
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPendingChannels();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                logger.debug("Event loop of the receiver failed.", e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Hands a new connection to this event loop. The connection is registered by the event loop thread itself.
+         *
+         * @param channel Accepted connection
+         */
+        void assign(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Registers all connections, which were assigned to this event loop since the last iteration.
+         */
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, new ChannelState(channel));
+                } catch (IOException e) {
+                    logger.debug("Could not register an incoming connection.", e);
+                    closeChannel(channel);
+                }
+            }
+        }
+
+        /**
+         * Accepts all pending connections and distributes them among the event loops in a round robin fashion.
+         */
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[nextEventLoop].assign(channel);
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            }
+        }
+
+        /**
+         * Reads all available bytes of a connection and processes completed messages.
+         *
+         * @param key Selection key of the readable connection
+         */
+        private void read(SelectionKey key) {
+            SocketChannel channel = (SocketChannel) key.channel();
+            ChannelState state = (ChannelState) key.attachment();
+            try {
+                int read;
+                do {
+                    readBuffer.clear();
+                    read = channel.read(readBuffer);
+                    if (read > 0) {
+                        readBuffer.flip();
+                        state.receive(readBuffer);
+                    }
+                } while (read == readBuffer.capacity());
+                if (read == -1) {
+                    state.finish();
+                    key.cancel();
+                    closeChannel(channel);
+                }
+            } catch (IOException e) {
+                logger.debug("Connection to {} was interrupted.", channel.socket().getInetAddress(), e);
+                key.cancel();
+                closeChannel(channel);
+            }
+        }
+
+        /**
+         * Closes all connections of this event loop and the selector itself.
+         */
+        private void close() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                logger.trace("There occurred an error while closing an event loop.", e);
+            }
+            pendingChannels.forEach(NioReceiver::closeChannel);
+            if (this == eventLoops[0]) {
+                closeChannel(serverChannel);
+                logger.debug("Receiver stopped listening to incoming messages.");
+            }
+        }
+    }
+
+    /**
+     * Decoding state of a single connection. Holds the bytes of incomplete messages between two reads.
+     */
+    private class ChannelState {
+        private final SocketChannel channel;
+        private byte[] data;
+        private int start;
+        private int end;
+        private int scanned;
+        private boolean splitLines;
+        private Protocol protocol;
+        private byte version;
+
+        /**
+         * Constructor for the state of a freshly accepted connection.
+         *
+         * @param channel Connection, whose bytes are decoded
+         */
+        ChannelState(SocketChannel channel) {
+            this.channel = channel;
+            this.data = new byte[256];
+            this.protocol = Protocol.UNKNOWN;
+        }
+
+        /**
+         * Processes the bytes of a read. If no bytes of an earlier read are pending on a framed connection, complete frames are passed on
+         * straight out of the read buffer. All remaining bytes are copied behind the unprocessed bytes of the connection.
+         *
+         * @param buffer Read buffer of the event loop, which is reused after this method returned
+         * @throws IOException when the peer violated the protocol
+         */
+        void receive(ByteBuffer buffer) throws IOException {
+            if (protocol == Protocol.FRAMED && start == end) {
+                byte[] array = buffer.array();
+                int position = buffer.arrayOffset() + buffer.position();
+                int limit = buffer.arrayOffset() + buffer.limit();
+                while (limit - position >= WireProtocol.HEADER_LENGTH) {
+                    int length = WireProtocol.payloadLength(array, position, version);
+                    int frameLength = WireProtocol.HEADER_LENGTH + length;
+                    if (limit - position < frameLength) {
+                        break;
+                    }
+                    deliver(array, position + WireProtocol.HEADER_LENGTH, length);
+                    position += frameLength;
+                }
+                buffer.position(position - buffer.arrayOffset());
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            append(buffer);
+            process();
+        }
+
+        /**
+         * Copies the content of the read buffer behind the unprocessed bytes.
+         *
+         * @param buffer Read buffer of the event loop
+         */
+        private void append(ByteBuffer buffer) {
+            ensureCapacity(buffer.remaining());
+            int length = buffer.remaining();
+            buffer.get(data, end, length);
+            end += length;
+        }
+
+        /**
+         * Makes room for additional bytes by discarding processed bytes and growing the buffer if necessary.
+         *
+         * @param additional Amount of bytes which have to fit behind the unprocessed bytes
+         */
+        private void ensureCapacity(int additional) {
+            int available = end - start;
+            if (end + additional <= data.length) {
+                return;
+            }
+            if (available + additional > data.length) {
+                byte[] grown = new byte[Math.max(data.length * 2, available + additional)];
+                System.arraycopy(data, start, grown, 0, available);
+                data = grown;
+            } else {
+                System.arraycopy(data, start, data, 0, available);
+            }
+            scanned -= start;
+            start = 0;
+            end = available;
+        }
+
+        /**
+         * Processes all complete messages in the buffer.
+         *
+         * @throws IOException when the peer violated the protocol
+         */
+        private void process() throws IOException {
+            if (protocol == Protocol.UNKNOWN && end > start) {
+                protocol = data[start] == WireProtocol.MAGIC ? Protocol.PREFACE : Protocol.LEGACY;
+                splitLines = WireProtocol.isLineDelimited(data[start]);
+                scanned = start;
+            }
+            if (protocol == Protocol.PREFACE && end - start >= WireProtocol.PREFACE_LENGTH) {
+                version = WireProtocol.acceptedVersion(data, start);
+                start += WireProtocol.PREFACE_LENGTH;
+                ByteBuffer acknowledgement = ByteBuffer.wrap(WireProtocol.acknowledgement(version));
+                while (acknowledgement.hasRemaining()) {
+                    channel.write(acknowledgement);
+                }
+                protocol = Protocol.FRAMED;
+            }
+            if (protocol == Protocol.FRAMED) {
+                processFrames();
+            } else if (protocol == Protocol.LEGACY && splitLines) {
+                processLines();
+            }
+        }
+
+        /**
+         * Passes every complete frame to the message bus.
+         */
+        private void processFrames() throws IOException {
+            while (end - start >= WireProtocol.HEADER_LENGTH) {
+                int length = WireProtocol.payloadLength(data, start, version);
+                int frameLength = WireProtocol.HEADER_LENGTH + length;
+                if (end - start < frameLength) {
+                    // Reserve the space of the whole frame at once
+                    ensureCapacity(frameLength - (end - start));
+                    return;
+                }
+                deliver(data, start + WireProtocol.HEADER_LENGTH, length);
+                start += frameLength;
+            }
+        }
+
+        /**
+         * Passes every complete line to the message bus. Used for json messages on connections of the legacy protocol.
+         */
+        private void processLines() {
+            for (; scanned < end; scanned++) {
+                if (data[scanned] == '\n') {
+                    deliver(data, start, scanned - start);
+                    start = scanned + 1;
+                }
+            }
+        }
+
+        /**
+         * Called when the peer closed the connection. For the legacy protocol, the remaining bytes form the last message.
+         */
+        void finish() {
+            if (protocol == Protocol.LEGACY) {
+                deliver(data, start, end - start);
+            } else if (end > start) {
+                logger.debug("Connection to {} was closed inside a frame.", channel.socket().getInetAddress());
+            }
+            start = end;
+        }
+
+        /**
+         * Passes a single message to the message bus controller.
+         */
+        private void deliver(byte[] buffer, int offset, int length) {
+            if (length > 0) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received message from {}. Forwarding to messaging bus.", channel.socket().getInetAddress());
+                }
+                messageBusController.processMessage(buffer, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Protocol spoken on a connection. It is determined by the first byte received.
+     */
+    private enum Protocol {
+        UNKNOWN, PREFACE, FRAMED, LEGACY
+    }
+
+    /**
+     * Closes a channel without propagating errors.
+     *
+     * @param channel Channel to be closed
+     */
+    private static void closeChannel(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.trace("There occurred an error while closing a channel.", e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A message waiting to be sent, which consists of up to three segments: a head, a body and a tail.
+ * The body may be a range of a larger array, so a forwarded message can reference the bytes of the received message directly,
+ * instead of copying them into a new array. Only the head and the tail are created for the outgoing message.
+ * <p>
+ * The referenced arrays must not be modified after the message was created, since the same message may be queued for multiple peers.
+ *
+ * @author Tobias Haider
+ * @see Sender
+ */
+public class OutboundMessage {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] head;
+    private final byte[] body;
+    private final int bodyOffset;
+    private final int bodyLength;
+    private final byte[] tail;
+
+    /**
+     * Constructor for a message consisting of three segments.
+     *
+     * @param head       Bytes written first
+     * @param body       Array containing the bytes written second
+     * @param bodyOffset Position of the body inside its array
+     * @param bodyLength Length of the body
+     * @param tail       Bytes written last
+     */
+    public OutboundMessage(byte[] head, byte[] body, int bodyOffset, int bodyLength, byte[] tail) {
+        this.head = head;
+        this.body = body;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.tail = tail;
+    }
+
+    /**
+     * Creates a message consisting of a single segment.
+     *
+     * @param data Bytes of the whole message
+     * @return The outbound message
+     */
+    public static OutboundMessage of(byte[] data) {
+        return new OutboundMessage(EMPTY, data, 0, data.length, EMPTY);
+    }
+
+    /**
+     * @return Total length of the message in bytes
+     */
+    public int length() {
+        return head.length + bodyLength + tail.length;
+    }
+
+    /**
+     * Writes all segments to a stream. The body is written directly from the array it references.
+     *
+     * @param out Stream the message is written to
+     * @throws IOException when writing failed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(head);
+        out.write(body, bodyOffset, bodyLength);
+        out.write(tail);
+    }
+
+    /**
+     * Copies all segments into a single array.
+     *
+     * @return Bytes of the whole message
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length()];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        System.arraycopy(body, bodyOffset, bytes, head.length, bodyLength);
+        System.arraycopy(tail, 0, bytes, head.length + bodyLength, tail.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,22 @@
+package network;
+
+/**
+ * Behaviour of a sender, when a message should be sent to a peer, whose outbound queue is full.
+ *
+ * @author Tobias Haider
+ * @see Sender
+ */
+public enum OverflowPolicy {
+    /**
+     * The publishing thread waits until the queue has room again.
+     */
+    BLOCK,
+    /**
+     * The oldest queued message is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new message is discarded.
+     */
+    DROP_NEWEST
+}
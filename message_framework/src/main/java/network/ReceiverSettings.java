@@ -0,0 +1,63 @@
+package network;
+
+import utilities.ThreadingMode;
+
+/**
+ * The ReceiverSettings class bundles the configuration of the receiver of a message bus.
+ * Objects of this class are immutable and are created by the MessageBusFactory.
+ *
+ * @author Tobias Haider
+ * @see Receiver
+ */
+public class ReceiverSettings {
+    private final ReceiverType type;
+    private final int threads;
+    private final int bufferSize;
+    private final ThreadingMode threadingMode;
+
+    /**
+     * Constructor for the receiver settings.
+     *
+     * @param type          Implementation of the receiver
+     * @param threads       Amount of event loop threads used by a non-blocking receiver
+     * @param bufferSize    Size in bytes of the read buffer of every event loop
+     * @param threadingMode Kind of threads handling connections of a blocking receiver
+     */
+    public ReceiverSettings(ReceiverType type, int threads, int bufferSize, ThreadingMode threadingMode) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one receiver thread is required.");
+        }
+        this.type = type;
+        this.threads = threads;
+        this.bufferSize = bufferSize;
+        this.threadingMode = threadingMode;
+    }
+
+    /**
+     * @return Implementation of the receiver
+     */
+    public ReceiverType getType() {
+        return type;
+    }
+
+    /**
+     * @return Amount of event loop threads used by a non-blocking receiver
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return Size in bytes of the read buffer of every event loop
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return Kind of threads handling connections of a blocking receiver
+     */
+    public ThreadingMode getThreadingMode() {
+        return threadingMode;
+    }
+}
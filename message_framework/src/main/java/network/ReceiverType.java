@@ -0,0 +1,18 @@
+package network;
+
+/**
+ * The available implementations of a receiver.
+ *
+ * @author Tobias Haider
+ * @see Receiver
+ */
+public enum ReceiverType {
+    /**
+     * Blocking server socket. Every connection is handled by its own thread.
+     */
+    BLOCKING,
+    /**
+     * Non-blocking server socket channel. All connections are served by a fixed number of event loop threads.
+     */
+    NIO
+}
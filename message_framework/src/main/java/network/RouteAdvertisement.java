@@ -0,0 +1,145 @@
+package network;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Control message of the distance vector protocol. Every message bus periodically sends its distances to all message buses it can reach to its neighbours.
+ * The advertisement also contains the message types subscribed by the advertising message bus and by the message buses it forwards messages to,
+ * so neighbours do not forward messages of other types to it. Subscriptions are a distance vector of their own: the message types of every
+ * subscribing message bus are advertised together with the distance to it, so a withdrawn subscription is withdrawn along the same paths, even in cycles.
+ * Advertisements use a reserved message type, which can never be the simple name of a java class, and a time to live of one hop,
+ * so they are never forwarded or delivered to the application.
+ *
+ * @author Tobias Haider
+ * @see RoutingTable
+ * @see SubscriptionTable
+ */
+public class RouteAdvertisement {
+    /**
+     * Reserved message type of route advertisements
+     */
+    public static final String MESSAGE_TYPE = "t-bus:routes";
+
+    private Map<String, Integer> distances;
+    private Map<String, Subscription> subscriptions;
+
+    /**
+     * Constructor for an empty route advertisement. Used for parsing.
+     */
+    public RouteAdvertisement() {
+        this.distances = new HashMap<>();
+    }
+
+    /**
+     * Constructor for a route advertisement
+     *
+     * @param distances     Amount of hops to every reachable message bus
+     * @param subscriptions Subscriptions of every message bus reachable over the advertising message bus
+     */
+    public RouteAdvertisement(Map<String, Integer> distances, Map<String, Subscription> subscriptions) {
+        this.distances = distances;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * @return Amount of hops to every reachable message bus
+     */
+    public Map<String, Integer> getDistances() {
+        return distances;
+    }
+
+    /**
+     * @param distances Amount of hops to every reachable message bus
+     */
+    public void setDistances(Map<String, Integer> distances) {
+        this.distances = distances;
+    }
+
+    /**
+     * @return Subscriptions of every message bus reachable over the advertising message bus or null, if they were not advertised
+     */
+    public Map<String, Subscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * @param subscriptions Subscriptions of every message bus reachable over the advertising message bus
+     */
+    public void setSubscriptions(Map<String, Subscription> subscriptions) {
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Message types subscribed by a single message bus and the distance to it. A message bus, which is reached over the receiver of the advertisement,
+     * is advertised with an infinite distance and without message types (poisoned reverse).
+     */
+    public static class Subscription {
+        private int distance;
+        private Set<String> messageTypes;
+
+        /**
+         * Constructor for an empty subscription. Used for parsing.
+         */
+        public Subscription() {
+            this.messageTypes = Collections.emptySet();
+        }
+
+        /**
+         * Constructor for a subscription
+         *
+         * @param distance     Amount of hops to the subscribing message bus
+         * @param messageTypes Message types subscribed by the message bus
+         */
+        public Subscription(int distance, Set<String> messageTypes) {
+            this.distance = distance;
+            this.messageTypes = messageTypes;
+        }
+
+        /**
+         * @return Amount of hops to the subscribing message bus
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * @param distance Amount of hops to the subscribing message bus
+         */
+        public void setDistance(int distance) {
+            this.distance = distance;
+        }
+
+        /**
+         * @return Message types subscribed by the message bus
+         */
+        public Set<String> getMessageTypes() {
+            return messageTypes;
+        }
+
+        /**
+         * @param messageTypes Message types subscribed by the message bus
+         */
+        public void setMessageTypes(Set<String> messageTypes) {
+            this.messageTypes = messageTypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Subscription that = (Subscription) o;
+
+            return distance == that.distance && Objects.equals(messageTypes, that.messageTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * distance + Objects.hashCode(messageTypes);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package network;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RoutingTable stores the next hop towards other message buses. Routes are learned in two ways:
+ * <ul>
+ * <li>From received messages: the neighbour, which delivered the first copy of a message, lies on the fastest path back to the publisher of the message.
+ * The distance of such a route is unknown.</li>
+ * <li>From route advertisements of the neighbours, if enabled: every neighbour periodically announces its distance to all message buses it can reach.
+ * The table keeps the neighbour with the shortest distance as next hop (distance vector routing). Advertised routes take precedence over learned routes.</li>
+ * </ul>
+ * A route expires, when it was not confirmed for a while, so routes over failed paths are forgotten.
+ * <p>
+ * The last advertisement of every neighbour is kept as well. Because of the poisoned reverse, a neighbour advertises a message bus as unreachable,
+ * if its route to the message bus leads over this message bus. So the table knows its children in the shortest path tree of every publisher.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Tobias Haider
+ * @see Forwarder
+ * @see RouteAdvertisement
+ */
+class RoutingTable {
+    /**
+     * Distance, at which a message bus is treated as unreachable. Bounds the time needed to forget a route, which loops between buses.
+     */
+    static final int INFINITE_DISTANCE = 16;
+    /**
+     * Distance of routes learned from received messages
+     */
+    static final int UNKNOWN_DISTANCE = -1;
+
+    private final Map<String, Route> routes;
+    private final Map<String, Advertised> advertisements;
+    private final long timeout;
+
+    /**
+     * Constructor for an empty routing table.
+     *
+     * @param timeout Time in milliseconds after which a route expires, if it was not confirmed again
+     */
+    RoutingTable(long timeout) {
+        this.routes = new ConcurrentHashMap<>();
+        this.advertisements = new ConcurrentHashMap<>();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Remembers or refreshes the route towards a message bus, which published a received message.
+     * A valid advertised route over another neighbour is kept.
+     *
+     * @param destination Identifier of the message bus, which published a received message
+     * @param nextHop     Identifier of the neighbour, which delivered the message
+     */
+    synchronized void learn(String destination, String nextHop) {
+        long now = System.currentTimeMillis();
+        Route route = routes.get(destination);
+        if (route != null && route.nextHop.equals(nextHop)) {
+            route.expiry = now + timeout;
+        } else if (route == null || route.distance == UNKNOWN_DISTANCE || route.expiry < now) {
+            routes.put(destination, new Route(nextHop, UNKNOWN_DISTANCE, now + timeout));
+        }
+    }
+
+    /**
+     * Applies the route advertisement of a neighbour. A route over the neighbour is used, if it is shorter than the current route
+     * or the current route already leads over this neighbour. Destinations no longer advertised by the neighbour become unreachable over it.
+     *
+     * @param nextHop   Identifier of the advertising neighbour
+     * @param distances Distances from the neighbour to the message buses it can reach
+     * @param self      Identifier of this message bus, which is never added to the table
+     * @return A route was added, removed or changed its next hop or distance
+     */
+    synchronized boolean update(String nextHop, Map<String, Integer> distances, String self) {
+        long now = System.currentTimeMillis();
+        advertisements.put(nextHop, new Advertised(distances, now + timeout));
+        boolean changed = false;
+        for (Map.Entry<String, Integer> entry : distances.entrySet()) {
+            String destination = entry.getKey();
+            if (destination.equals(self)) {
+                continue;
+            }
+            int distance = Math.min(entry.getValue() + 1, INFINITE_DISTANCE);
+            Route route = routes.get(destination);
+            boolean sameHop = route != null && route.nextHop.equals(nextHop);
+            if (distance >= INFINITE_DISTANCE) {
+                if (sameHop) {
+                    routes.remove(destination);
+                    changed = true;
+                }
+            } else if (route == null || sameHop || route.distance == UNKNOWN_DISTANCE || route.expiry < now || distance < route.distance) {
+                routes.put(destination, new Route(nextHop, distance, now + timeout));
+                changed |= route == null || !sameHop || route.distance != distance;
+            }
+        }
+        return routes.entrySet().removeIf(entry -> entry.getValue().nextHop.equals(nextHop) && entry.getValue().distance != UNKNOWN_DISTANCE
+                && !distances.containsKey(entry.getKey())) || changed;
+    }
+
+    /**
+     * Decides, whether a neighbour is a child in the shortest path tree of a publisher, which means it receives the messages of the publisher over this message bus.
+     * If the last advertisement of the neighbour expired or did not contain the publisher, the neighbour is treated as child, so it does not miss any message.
+     *
+     * @param neighbour   Identifier of the neighbour
+     * @param publisherId Identifier of the message bus, which published a message
+     * @return The message has to be forwarded to the neighbour
+     */
+    boolean isChild(String neighbour, String publisherId) {
+        Advertised advertised = advertisements.get(neighbour);
+        if (advertised == null || advertised.expiry < System.currentTimeMillis()) {
+            return true;
+        }
+        Integer distance = advertised.distances.get(publisherId);
+        return distance == null || distance >= INFINITE_DISTANCE;
+    }
+
+    /**
+     * Looks up the route towards a message bus. Expired routes are removed.
+     *
+     * @param destination Identifier of the message bus
+     * @return Identifier of the neighbour on the route or null, if no valid route is known
+     */
+    String nextHop(String destination) {
+        Route route = validRoute(destination);
+        return route != null ? route.nextHop : null;
+    }
+
+    /**
+     * Looks up the amount of hops to a message bus.
+     *
+     * @param destination Identifier of the message bus
+     * @return Distance of the route or UNKNOWN_DISTANCE, if no valid route is known or its distance is unknown
+     */
+    int distance(String destination) {
+        Route route = validRoute(destination);
+        return route != null ? route.distance : UNKNOWN_DISTANCE;
+    }
+
+    /**
+     * @return Largest distance of all valid routes with a known distance or UNKNOWN_DISTANCE, if there is no such route
+     */
+    int maxDistance() {
+        long now = System.currentTimeMillis();
+        int max = UNKNOWN_DISTANCE;
+        for (Route route : routes.values()) {
+            if (route.expiry >= now) {
+                max = Math.max(max, route.distance);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Creates the route advertisement for a neighbour. Routes leading over the neighbour itself are advertised as unreachable (poisoned reverse),
+     * so the neighbour never routes back over this message bus. Routes with an unknown distance are not advertised.
+     *
+     * @param neighbour Identifier of the neighbour receiving the advertisement
+     * @param self      Identifier of this message bus, which is advertised with distance zero
+     * @return Distances to all reachable message buses
+     */
+    Map<String, Integer> advertisement(String neighbour, String self) {
+        long now = System.currentTimeMillis();
+        Map<String, Integer> distances = new HashMap<>();
+        distances.put(self, 0);
+        routes.forEach((destination, route) -> {
+            if (route.expiry >= now && route.distance != UNKNOWN_DISTANCE) {
+                distances.put(destination, route.nextHop.equals(neighbour) ? INFINITE_DISTANCE : route.distance);
+            }
+        });
+        return distances;
+    }
+
+    /**
+     * Forgets all routes over a neighbour, for example because the connection to it was removed.
+     *
+     * @param nextHop Identifier of the neighbour
+     */
+    void removeNextHop(String nextHop) {
+        advertisements.remove(nextHop);
+        routes.values().removeIf(route -> route.nextHop.equals(nextHop));
+    }
+
+    /**
+     * @return Amount of stored routes including expired routes, which were not looked up since they expired
+     */
+    int size() {
+        return routes.size();
+    }
+
+    /**
+     * Returns the route towards a message bus, if it did not expire yet. An expired route is removed.
+     */
+    private Route validRoute(String destination) {
+        Route route = routes.get(destination);
+        if (route == null) {
+            return null;
+        }
+        if (route.expiry < System.currentTimeMillis()) {
+            routes.remove(destination, route);
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Last advertisement of a neighbour and the time until it is trusted.
+     */
+    private static class Advertised {
+        private final Map<String, Integer> distances;
+        private final long expiry;
+
+        Advertised(Map<String, Integer> distances, long expiry) {
+            this.distances = distances;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Next hop and distance of a route and the time until the route is valid.
+     */
+    private static class Route {
+        private final String nextHop;
+        private final int distance;
+        private volatile long expiry;
+
+        Route(String nextHop, int distance, long expiry) {
+            this.nextHop = nextHop;
+            this.distance = distance;
+            this.expiry = expiry;
+        }
+    }
+}
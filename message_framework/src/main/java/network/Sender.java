@@ -1,51 +1,166 @@
 package network;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utilities.MessageBusMetrics;
 
 /**
  * The Sender class is an abstraction for a client Socket.
  * It can be used to send messages to peers.
+ * Messages are put into a bounded outbound queue and written by writer threads of the sender, so publishing never waits for the network.
+ * Depending on the connection settings, a socket is either opened for every single message or every writer keeps its own persistent connection open.
+ * Persistent connections use the framed protocol. Peers not supporting it are detected during the handshake and receive one message per socket instead.
+ * Legacy peers are probed again after the maximum reconnection delay, so a peer, which was updated or only answered too slowly, gets its persistent connection back.
+ * The delay doubles with every probe the peer fails, up to a bounded multiple of the maximum reconnection delay.
+ * <p>
+ * Writers of persistent connections send messages in batches. A batch contains all queued messages up to a size limit and is written with a single flush.
+ * Optionally, a writer waits a short delay for further messages, before it writes an incomplete batch.
+ * The time needed for writing and the messages dropped from the queue are recorded in the metrics of the message bus.
+ * Log statements on the path of every message only use precomputed arguments, so they do not create objects while the log level is disabled.
  *
  * @author Tobias Haider
+ * @see OverflowPolicy
  */
 public class Sender {
+    private final String identifier;
     private final String ip;
     private final int port;
+    /**
+     * Address of the peer as "ip:port" for log statements
+     */
+    private final String address;
+    private final ConnectionSettings settings;
+    private final BlockingQueue<OutboundMessage> queue;
+    private final Thread[] writers;
+    private final MessageBusMetrics metrics;
+    /**
+     * Upper bound of the delay between two probes of a legacy peer as multiple of the maximum reconnection delay
+     */
+    private static final int MAX_LEGACY_PROBE_FACTOR = 64;
+
+    /**
+     * Time until which the peer receives one message per socket, because it was detected as legacy peer
+     */
+    private volatile long legacyUntil;
+    /**
+     * Delay until the next probe, if the peer is detected as legacy peer again
+     */
+    private long legacyProbeDelay;
+    /**
+     * The last attempt to send a message to the peer succeeded or no attempt was made yet
+     */
+    private volatile boolean reachable;
+    private volatile boolean running;
 
     private static Logger logger = LoggerFactory.getLogger(Sender.class);
 
     /**
-     * Constructor for a Sender. Delivers an abstraction for a client socket.
+     * Constructor for a Sender. Delivers an abstraction for a client socket and starts the writer threads.
      *
-     * @param ip   IP address of another application
-     * @param port Port number of another application
+     * @param ip       IP address of another application
+     * @param port     Port number of another application
+     * @param settings Configuration of the outgoing connections
      */
-    Sender(String ip, int port) {
+    Sender(String ip, int port, ConnectionSettings settings) {
+        this(null, ip, port, settings, new MessageBusMetrics());
+    }
+
+    /**
+     * Constructor for a Sender recording into the metrics of a message bus. Delivers an abstraction for a client socket and starts the writer threads.
+     *
+     * @param identifier Identifier of the peer or null, if it is unknown
+     * @param ip         IP address of another application
+     * @param port       Port number of another application
+     * @param settings   Configuration of the outgoing connections
+     * @param metrics    Metrics of the message bus
+     */
+    Sender(String identifier, String ip, int port, ConnectionSettings settings, MessageBusMetrics metrics) {
+        this.identifier = identifier;
         this.ip = ip;
         this.port = port;
+        this.address = ip + ":" + port;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.writers = new Thread[settings.getConnectionsPerPeer()];
+        this.metrics = metrics;
+        this.reachable = true;
+        this.running = true;
+        for (int i = 0; i < writers.length; i++) {
+            Connection connection = settings.isPersistent() ? new Connection(ip, port, settings) : null;
+            writers[i] = new Thread(new Writer(connection), "t-bus-sender-" + ip + ":" + port + "-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
     }
 
     /**
-     * Method used for sending a message package.
+     * Method used for sending a message package. The message is only queued, the actual sending happens asynchronously.
+     * If the queue is full, the overflow policy of the connection settings decides what happens.
      *
      * @param message Message that should be sent
+     * @return The message was queued. If false, the message was dropped.
      */
-    void sendMessage(String message) {
+    boolean sendMessage(OutboundMessage message) {
+        switch (settings.getOverflowPolicy()) {
+            case BLOCK:
+                try {
+                    queue.put(message);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    metrics.getDropped().increment(null, identifier);
+                    return false;
+                }
+            case DROP_OLDEST:
+                while (!queue.offer(message)) {
+                    if (queue.poll() != null) {
+                        metrics.getDropped().increment(null, identifier);
+                        logger.debug("Outbound queue to {} is full. Dropped the oldest message.", address);
+                    }
+                }
+                return true;
+            case DROP_NEWEST:
+            default:
+                if (!queue.offer(message)) {
+                    metrics.getDropped().increment(null, identifier);
+                    logger.debug("Outbound queue to {} is full. Dropped the newest message.", address);
+                    return false;
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Sends a message over a socket opened only for this message. The end of the message is signaled by closing the socket.
+     * A message, which could not be sent, is counted as dropped.
+     *
+     * @param message Message that should be sent
+     */
+    private void sendOnNewSocket(OutboundMessage message) {
         Socket socket = null;
         try {
-            socket = new Socket(ip, port);
-            OutputStreamWriter out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
-            out.write(message);
+            long start = System.nanoTime();
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(ip, port), settings.getConnectTimeout());
+            OutputStream out = socket.getOutputStream();
+            message.writeTo(out);
             out.flush();
-            logger.debug("Successfully sent a message to {}:{}.", ip, port);
+            metrics.recordSend(start);
+            reachable = true;
+            logger.debug("Successfully sent a message to {}.", address);
         } catch (IOException e) {
+            reachable = false;
+            metrics.getDropped().increment(null, identifier);
             logger.debug("The message could not be sent. The receiver is probably not available.", e);
         } finally {
             if (socket != null) {
@@ -58,6 +173,36 @@ public class Sender {
         }
     }
 
+    /**
+     * Tells, whether messages currently reach the peer. A peer is considered reachable, until an attempt to send a message to it failed,
+     * and again after the next successful attempt.
+     *
+     * @return The last attempt to send a message to the peer succeeded or no attempt was made yet
+     */
+    boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Stops the writer threads and closes all persistent connections to the peer. Messages still queued are discarded.
+     */
+    void close() {
+        running = false;
+        for (Thread writer : writers) {
+            writer.interrupt();
+        }
+        queue.clear();
+    }
+
+    /**
+     * Getter for the amount of messages waiting to be sent to the peer
+     *
+     * @return Current depth of the outbound queue
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
     /**
      * Getter for the IP address
      *
@@ -75,4 +220,127 @@ public class Sender {
     public int getPort() {
         return port;
     }
+
+    /**
+     * Sends one message per socket to the peer until the next probe. Every detection in a row doubles the delay until the next probe,
+     * so a real legacy peer is rarely blocked by a handshake timeout and rarely receives a preface it cannot parse.
+     */
+    private synchronized void markLegacy() {
+        long now = System.currentTimeMillis();
+        if (now < legacyUntil) {
+            // Another writer detected the legacy peer already
+            return;
+        }
+        long maxDelay = settings.getMaxReconnectDelay() * MAX_LEGACY_PROBE_FACTOR;
+        legacyProbeDelay = legacyProbeDelay == 0 ? settings.getMaxReconnectDelay() : Math.min(legacyProbeDelay * 2, maxDelay);
+        legacyUntil = now + legacyProbeDelay;
+    }
+
+    /**
+     * Forgets the legacy status after the peer accepted the framed protocol.
+     */
+    private synchronized void resetLegacy() {
+        legacyUntil = 0;
+        legacyProbeDelay = 0;
+    }
+
+    /**
+     * Internal runnable draining the outbound queue. Every writer owns one persistent connection, if persistent connections are enabled.
+     */
+    private class Writer implements Runnable {
+        private final Connection connection;
+
+        /**
+         * Constructor for a writer.
+         *
+         * @param connection Persistent connection used by this writer or null, if a socket is opened per message
+         */
+        Writer(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Task of the writer. Takes batches of messages from the queue and sends them until the sender is closed.
+         */
+        @Override
+        public void run() {
+            List<OutboundMessage> batch = new ArrayList<>();
+            try {
+                while (running) {
+                    batch.add(queue.take());
+                    if (connection != null && System.currentTimeMillis() >= legacyUntil) {
+                        collectBatch(batch);
+                        sendPersistent(batch);
+                    } else {
+                        sendOnNewSocket(batch.get(0));
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                logger.trace("Writer for {} was stopped.", address);
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Adds queued messages to a batch, until the batch reaches its size limit or no further message arrives within the batch delay.
+         *
+         * @param batch Batch containing the first message
+         * @throws InterruptedException when the sender was closed while waiting for further messages
+         */
+        private void collectBatch(List<OutboundMessage> batch) throws InterruptedException {
+            int bytes = batch.get(0).length();
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(settings.getBatchDelayMicros());
+            while (bytes < settings.getMaxBatchBytes()) {
+                OutboundMessage message = queue.poll();
+                if (message == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || (message = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                        return;
+                    }
+                }
+                batch.add(message);
+                bytes += message.length();
+            }
+        }
+
+        /**
+         * Sends a batch of messages over the persistent connection of the writer.
+         * While the peer is not reachable, the batch is kept and sending is retried once the reconnection delay has passed.
+         *
+         * @param batch Messages that should be sent
+         * @throws InterruptedException when the sender was closed while waiting for a reconnection attempt
+         */
+        private void sendPersistent(List<OutboundMessage> batch) throws InterruptedException {
+            while (running) {
+                try {
+                    long start = System.nanoTime();
+                    connection.send(batch);
+                    metrics.recordSend(start);
+                    reachable = true;
+                    if (legacyUntil != 0) {
+                        resetLegacy();
+                    }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Successfully sent {} messages to {}.", batch.size(), address);
+                    }
+                    return;
+                } catch (Connection.LegacyPeerException e) {
+                    logger.info("Peer {} does not support persistent connections. Falling back to one connection per message.", address);
+                    markLegacy();
+                    for (OutboundMessage message : batch) {
+                        sendOnNewSocket(message);
+                    }
+                    return;
+                } catch (IOException e) {
+                    reachable = false;
+                    logger.debug("The messages could not be sent. The receiver is probably not available. Retrying.", e);
+                    Thread.sleep(Math.max(connection.getRemainingReconnectDelay(), 1));
+                }
+            }
+        }
+    }
 }
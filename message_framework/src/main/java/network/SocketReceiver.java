@@ -0,0 +1,188 @@
+package network;
+
+import mf.MessageBusController;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ThreadingMode;
+
+/**
+ * The SocketReceiver class is an abstraction for a blocking server socket.
+ * Every incoming connection is handled by its own thread. Depending on the threading mode, these are pooled platform threads or virtual threads.
+ * Although multiple Receivers can be created it recommended to only use one Receiver inside the messaging framework.
+ *
+ * @author Tobias Haider
+ * @see NioReceiver
+ */
+public class SocketReceiver implements Receiver {
+    private final int serverPort;
+    private final MessageBusController messageBusController;
+    private final ExecutorService threads;
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    private static Logger logger = LoggerFactory.getLogger(SocketReceiver.class);
+
+    /**
+     * Constructor for SocketReceiver. Delivers an abstraction for a server socket.
+     *
+     * @param serverPort           Server port to which the receiver should listen
+     * @param messageBusController Message bus object to which received message should be passed on
+     * @param threadingMode        Kind of threads handling the incoming connections
+     */
+    public SocketReceiver(int serverPort, MessageBusController messageBusController, ThreadingMode threadingMode) {
+        this.serverPort = serverPort;
+        this.messageBusController = messageBusController;
+        this.threads = threadingMode.newPerTaskExecutor();
+        running = false;
+    }
+
+    /**
+     * Method used to start the receiver and therefore start listening to incoming messages .
+     *
+     * @throws IOException Throws an exception, if the server socket could not be instantiated
+     */
+    @Override
+    public void start() throws IOException {
+        running = true;
+        serverSocket = new ServerSocket(serverPort, CONNECTION_BACKLOG);
+        logger.debug("Receiver is now listening to incoming messages at port {}.", serverPort);
+        new Thread(() -> {
+            while (running) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    threads.submit(new SocketHandler(socket, messageBusController));
+                } catch (IOException e) {
+                    if (running) {
+                        logger.debug("Could not accept an incoming connection.", e);
+                    }
+                }
+            }
+            threads.shutdown();
+            logger.debug("Receiver stopped listening to incoming messages.");
+        }).start();
+    }
+
+    /**
+     * Method used to stop the receiver and therefore stop listening to incoming messages .
+     */
+    @Override
+    public void stopReceiving() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.trace("There occurred an error while closing the server socket.", e);
+            }
+        }
+    }
+
+    /**
+     * Internal runnable implementation used for processing multiple incoming messages simultaneously.
+     * Framed connections carry many messages and are recognized by the magic byte of their preface.
+     * All other connections use the legacy protocol, where messages are separated by line breaks or the end of the stream.
+     *
+     * @see WireProtocol
+     */
+    private static class SocketHandler implements Runnable {
+        private final Socket socket;
+        private final MessageBusController messageBusController;
+
+        /**
+         * Constructor for MessageDeliverer.
+         *
+         * @param socket               Socket which shall be dealt with
+         * @param messageBusController Controller where the message can be forwarded
+         */
+        SocketHandler(Socket socket, MessageBusController messageBusController) {
+            this.socket = socket;
+            this.messageBusController = messageBusController;
+        }
+
+        /**
+         * Task of the runnable. Read messages from the socket until it is closed and pass them to the message bus com.controller.
+         */
+        public void run() {
+            try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+                in.mark(1);
+                int first = in.read();
+                if (first == (WireProtocol.MAGIC & 0xFF)) {
+                    readFrames(new DataInputStream(in));
+                } else if (first != -1) {
+                    in.reset();
+                    readDelimited(in, WireProtocol.isLineDelimited((byte) first));
+                }
+            } catch (IOException e) {
+                logger.debug("Connection to {} was interrupted.", socket.getInetAddress(), e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.trace("There occurred an error while closing the receiver socket.", e);
+                }
+            }
+        }
+
+        /**
+         * Acknowledges the framed protocol and reads frames until the peer closes the connection.
+         *
+         * @param in Input stream positioned after the magic byte
+         * @throws IOException when the connection broke or the peer violated the protocol
+         */
+        private void readFrames(DataInputStream in) throws IOException {
+            byte version = WireProtocol.accept(in, socket.getOutputStream());
+            byte[] frame;
+            while ((frame = WireProtocol.readFrame(in, version)) != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received message from {}. Forwarding to messaging bus.", socket.getInetAddress());
+                }
+                messageBusController.processMessage(frame);
+            }
+        }
+
+        /**
+         * Reads messages of the legacy protocol, which are separated by the end of the stream and, for json, by line breaks.
+         *
+         * @param in         Input stream of the connection
+         * @param splitLines Line breaks separate messages
+         * @throws IOException when the connection broke
+         */
+        private void readDelimited(InputStream in, boolean splitLines) throws IOException {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            int next;
+            while ((next = in.read()) != -1) {
+                if (splitLines && next == '\n') {
+                    deliver(message);
+                } else {
+                    message.write(next);
+                }
+            }
+            deliver(message);
+        }
+
+        /**
+         * Passes a message of the legacy protocol to the message bus controller.
+         *
+         * @param message Bytes of the message, which are reset afterwards
+         */
+        private void deliver(ByteArrayOutputStream message) {
+            if (message.size() > 0) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received message from {}. Forwarding to messaging bus.", socket.getInetAddress());
+                }
+                messageBusController.processMessage(message.toByteArray());
+                message.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package network;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SubscriptionTable stores, which message types are subscribed behind every neighbour. A neighbour advertises the message types
+ * subscribed by itself and by all message buses it forwards messages to, so messages addressed to any receiver are only sent to neighbours
+ * leading to at least one interested message bus.
+ * Neighbours, which did not advertise their subscriptions recently, may use an older version of the framework or lost their advertisements,
+ * so they still receive all messages.
+ * <p>
+ * Subscriptions are spread with distance vector routing like the routes of the RoutingTable: the message types of every subscribing message bus
+ * are advertised together with the distance to it. The subscriptions of a message bus are only taken from the neighbour with the shortest distance to it,
+ * and advertised back to this neighbour as unreachable (poisoned reverse). So the subscriptions of a message bus travel along a tree rooted at it,
+ * and a withdrawn subscription is withdrawn everywhere, even if the message buses form a cycle. Subscriptions of a message bus, which cannot be reached anymore,
+ * count up to the infinite distance and disappear.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Tobias Haider
+ * @see Forwarder
+ * @see RouteAdvertisement
+ * @see RoutingTable
+ */
+class SubscriptionTable {
+    private final Map<String, Advertised> advertisements;
+    private final long timeout;
+
+    /**
+     * Constructor for an empty subscription table.
+     *
+     * @param timeout Time in milliseconds after which the advertised subscriptions of a neighbour are no longer trusted
+     */
+    SubscriptionTable(long timeout) {
+        this.advertisements = new ConcurrentHashMap<>();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Replaces the advertised subscriptions of a neighbour. Subscriptions of this message bus and unreachable message buses are ignored.
+     *
+     * @param neighbour     Identifier of the advertising neighbour
+     * @param subscriptions Subscriptions of the message buses reachable over the neighbour and the distances from the neighbour to them
+     * @param self          Identifier of this message bus
+     * @return The subscriptions behind the neighbour or the distances to the subscribing message buses changed
+     */
+    boolean update(String neighbour, Map<String, RouteAdvertisement.Subscription> subscriptions, String self) {
+        Map<String, RouteAdvertisement.Subscription> reachable = new HashMap<>();
+        subscriptions.forEach((origin, subscription) -> {
+            int distance = Math.min(subscription.getDistance() + 1, RoutingTable.INFINITE_DISTANCE);
+            if (!origin.equals(self) && distance < RoutingTable.INFINITE_DISTANCE) {
+                Set<String> messageTypes = subscription.getMessageTypes() != null ? subscription.getMessageTypes() : Collections.emptySet();
+                reachable.put(origin, new RouteAdvertisement.Subscription(distance, messageTypes));
+            }
+        });
+        Advertised previous = advertisements.put(neighbour, new Advertised(reachable, System.currentTimeMillis() + timeout));
+        return previous == null || !previous.subscriptions.equals(reachable);
+    }
+
+    /**
+     * Decides, whether a message has to be sent to a neighbour.
+     *
+     * @param neighbour   Identifier of the neighbour
+     * @param messageType Simple name of the message type
+     * @return A message bus behind the neighbour subscribed the message type or the subscriptions of the neighbour are unknown
+     */
+    boolean isInterested(String neighbour, String messageType) {
+        Advertised advertised = advertisements.get(neighbour);
+        return advertised == null || advertised.expiry < System.currentTimeMillis() || advertised.messageTypes.contains(messageType);
+    }
+
+    /**
+     * Creates the subscriptions advertised to a neighbour. The subscriptions of every other message bus are taken from the neighbour
+     * with the shortest distance to it. If this is the receiving neighbour itself, the message bus is advertised as unreachable.
+     *
+     * @param neighbour    Identifier of the neighbour receiving the advertisement
+     * @param self         Identifier of this message bus, which is advertised with distance zero
+     * @param messageTypes Message types subscribed by this message bus
+     * @param forwards     This message bus forwards messages, so the subscriptions of the other message buses are advertised as well
+     * @return Subscriptions of all message buses reachable over this message bus
+     */
+    Map<String, RouteAdvertisement.Subscription> advertisement(String neighbour, String self, Set<String> messageTypes, boolean forwards) {
+        Map<String, RouteAdvertisement.Subscription> subscriptions = new HashMap<>();
+        if (forwards) {
+            Map<String, String> nextHops = new HashMap<>();
+            long now = System.currentTimeMillis();
+            advertisements.forEach((nextHop, advertised) -> {
+                if (advertised.expiry < now) {
+                    return;
+                }
+                advertised.subscriptions.forEach((origin, subscription) -> {
+                    RouteAdvertisement.Subscription best = subscriptions.get(origin);
+                    // Ties are broken by the identifier of the neighbour, so every advertisement picks the same neighbour
+                    if (best == null || subscription.getDistance() < best.getDistance()
+                            || (subscription.getDistance() == best.getDistance() && nextHop.compareTo(nextHops.get(origin)) < 0)) {
+                        subscriptions.put(origin, subscription);
+                        nextHops.put(origin, nextHop);
+                    }
+                });
+            });
+            nextHops.forEach((origin, nextHop) -> {
+                if (nextHop.equals(neighbour)) {
+                    subscriptions.put(origin, new RouteAdvertisement.Subscription(RoutingTable.INFINITE_DISTANCE, Collections.emptySet()));
+                }
+            });
+        }
+        subscriptions.put(self, new RouteAdvertisement.Subscription(0, messageTypes));
+        return subscriptions;
+    }
+
+    /**
+     * Forgets the subscriptions of a neighbour, for example because the connection to it was removed.
+     *
+     * @param neighbour Identifier of the neighbour
+     */
+    void remove(String neighbour) {
+        advertisements.remove(neighbour);
+    }
+
+    /**
+     * Last advertised subscriptions of a neighbour, all message types subscribed behind it and the time until they are trusted.
+     */
+    private static class Advertised {
+        private final Map<String, RouteAdvertisement.Subscription> subscriptions;
+        private final Set<String> messageTypes;
+        private final long expiry;
+
+        Advertised(Map<String, RouteAdvertisement.Subscription> subscriptions, long expiry) {
+            this.subscriptions = subscriptions;
+            this.messageTypes = new HashSet<>();
+            subscriptions.values().forEach(subscription -> messageTypes.addAll(subscription.getMessageTypes()));
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package network;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The WireProtocol class defines the framed protocol used on persistent connections.
+ * <p>
+ * A framed connection starts with a preface sent by the connecting peer: a magic byte, the letters "TB" and the highest protocol version the peer supports.
+ * The receiving peer answers with the magic byte and the version it accepts. Afterwards every message is sent as a frame consisting of
+ * a four byte payload length, a version byte, a flags byte and the payload itself.
+ * <p>
+ * The magic byte can never start a UTF-8 encoded message, so receivers distinguish framed connections from legacy connections by looking at the first byte.
+ * Legacy connections carry a single message, which ends when the socket is closed.
+ * Json messages on legacy connections may additionally be separated by line breaks. Messages of binary codecs may contain line breaks, so they always end with the connection.
+ *
+ * @author Tobias Haider
+ * @see Sender
+ * @see Receiver
+ */
+final class WireProtocol {
+    /**
+     * First byte of the preface and the acknowledgement. Never part of valid UTF-8 text.
+     */
+    static final byte MAGIC = (byte) 0xFF;
+    /**
+     * Highest protocol version understood by this implementation
+     */
+    static final byte VERSION = 1;
+    /**
+     * Length of the preface sent when opening a framed connection
+     */
+    static final int PREFACE_LENGTH = 4;
+    /**
+     * Length of the frame header (length, version, flags)
+     */
+    static final int HEADER_LENGTH = 6;
+    /**
+     * Upper bound for the payload of a single frame. Larger frames indicate a corrupt stream.
+     */
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    /**
+     * Flags value of a frame without any special properties
+     */
+    static final byte NO_FLAGS = 0;
+
+    private static final byte[] PREFACE = {MAGIC, 'T', 'B', VERSION};
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Sends the preface and waits for the acknowledgement of the peer.
+     *
+     * @param out Output stream of the connection
+     * @param in  Input stream of the connection. A read timeout should be set on the socket.
+     * @return The protocol version accepted by the peer
+     * @throws ProtocolException when the peer answered with something else than an acknowledgement, which means it does not understand the framed protocol
+     * @throws EOFException when the peer closed the connection before answering
+     * @throws IOException when the answer could not be read, for example because of the read timeout
+     */
+    static byte negotiate(OutputStream out, InputStream in) throws IOException {
+        out.write(PREFACE);
+        out.flush();
+        int magic = in.read();
+        int version = magic == -1 ? -1 : in.read();
+        if (version == -1) {
+            throw new EOFException("Peer closed the connection during the handshake.");
+        }
+        if (magic != (MAGIC & 0xFF) || version < 1 || version > VERSION) {
+            throw new ProtocolException("Peer did not acknowledge the framed protocol.");
+        }
+        return (byte) version;
+    }
+
+    /**
+     * Reads the remainder of the preface after the magic byte and acknowledges it.
+     *
+     * @param in  Input stream of the connection, positioned after the magic byte
+     * @param out Output stream of the connection
+     * @return The protocol version used on the connection
+     * @throws IOException when the preface is malformed
+     */
+    static byte accept(DataInputStream in, OutputStream out) throws IOException {
+        byte[] preface = new byte[PREFACE_LENGTH];
+        in.readFully(preface, 1, PREFACE_LENGTH - 1);
+        byte version = acceptedVersion(preface, 0);
+        out.write(acknowledgement(version));
+        out.flush();
+        return version;
+    }
+
+    /**
+     * Validates a preface and determines the protocol version used on the connection.
+     *
+     * @param data   Buffer containing the preface
+     * @param offset Position of the magic byte inside the buffer
+     * @return The highest version supported by both peers
+     * @throws ProtocolException when the preface is malformed
+     */
+    static byte acceptedVersion(byte[] data, int offset) throws ProtocolException {
+        if (data[offset + 1] != 'T' || data[offset + 2] != 'B' || data[offset + 3] < 1) {
+            throw new ProtocolException("Malformed preface of a framed connection.");
+        }
+        return (byte) Math.min(data[offset + 3], VERSION);
+    }
+
+    /**
+     * Decides whether line breaks separate the messages of a legacy connection. This is only the case for json, which never contains raw line breaks.
+     *
+     * @param first First byte received on a legacy connection
+     * @return Line breaks separate messages. If false, the message ends when the connection is closed.
+     */
+    static boolean isLineDelimited(byte first) {
+        return first == '{' || first == ' ' || first == '\t' || first == '\r' || first == '\n';
+    }
+
+    /**
+     * @param version Accepted protocol version
+     * @return The answer to a preface
+     */
+    static byte[] acknowledgement(byte version) {
+        return new byte[]{MAGIC, version};
+    }
+
+    /**
+     * Reads the header of a frame and validates it.
+     *
+     * @param data    Buffer containing at least a complete frame header
+     * @param offset  Position of the header inside the buffer
+     * @param version Negotiated protocol version
+     * @return Length of the payload following the header
+     * @throws ProtocolException when the frame is malformed
+     */
+    static int payloadLength(byte[] data, int offset, byte version) throws ProtocolException {
+        int length = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+        byte frameVersion = data[offset + 4];
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length " + length + ".");
+        }
+        if (frameVersion < 1 || frameVersion > version) {
+            throw new ProtocolException("Unsupported frame version " + frameVersion + ".");
+        }
+        return length;
+    }
+
+    /**
+     * Writes a single frame. The stream is not flushed.
+     *
+     * @param out     Output stream of the connection
+     * @param version Negotiated protocol version
+     * @param flags   Flags of the frame
+     * @param payload Payload of the frame
+     * @throws IOException when the frame could not be written
+     */
+    static void writeFrame(OutputStream out, byte version, byte flags, OutboundMessage payload) throws IOException {
+        int length = payload.length();
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(version);
+        out.write(flags);
+        payload.writeTo(out);
+    }
+
+    /**
+     * Reads the payload of the next frame.
+     *
+     * @param in      Input stream of the connection
+     * @param version Negotiated protocol version
+     * @return Payload of the frame or null, if the peer closed the connection between two frames
+     * @throws IOException when the frame is malformed or the connection broke inside a frame
+     */
+    static byte[] readFrame(DataInputStream in, byte version) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        header[0] = (byte) first;
+        in.readFully(header, 1, HEADER_LENGTH - 1);
+        int length = payloadLength(header, 0, version);
+        byte[] payload = new byte[length];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            throw new ProtocolException("Connection closed inside a frame.");
+        }
+        return payload;
+    }
+
+    /**
+     * Signals a violation of the framed protocol.
+     */
+    static class ProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ProtocolException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import mf.MessagePackage;
+import mf.MessageTrace;
+import network.OutboundMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The BinaryMessageCodec represents message packages with a fixed binary header followed by the wrapped message encoded as CBOR.
+ * Compared to json, the meta data is read without any parsing and the wrapped message is smaller and faster to encode and decode.
+ * <p>
+ * Layout of an encoded message:
+ * <ol>
+ * <li>Format byte and version byte</li>
+ * <li>Time to live as 4 byte integer</li>
+ * <li>Message id, sender id, receiver id and message type, each as 2 byte length followed by UTF-8 bytes</li>
+ * <li>2 byte length followed by extension bytes, which are passed on unchanged by relays</li>
+ * <li>The wrapped message encoded as CBOR up to the end of the message</li>
+ * </ol>
+ * All numbers are big endian.
+ * <p>
+ * The extension bytes are a sequence of entries, each consisting of a 1 byte tag, a 2 byte length and the value.
+ * Relays copy the extensions without looking at them, so entries of newer versions reach their receivers, even if the relay does not know them.
+ * Only the trace entry of a traced message is replaced by relays, since they append their hop to it.
+ *
+ * @author Tobias Haider
+ * @see MessageCodec
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    /**
+     * First byte of every encoded message. Neither a json object nor a frame of the wire protocol starts with this byte.
+     */
+    public static final byte FORMAT = (byte) 0xB1;
+    /**
+     * Version of the binary layout
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Tag of the extension entry holding the identifier of the publishing message bus as UTF-8 bytes
+     */
+    static final byte EXTENSION_PUBLISHER = 1;
+    /**
+     * Tag of the extension entry holding the trace of a sampled message: the origin timestamp as 8 byte integer,
+     * the initial time to live as 4 byte integer and the 8 byte receive and forward timestamps of every relay
+     */
+    static final byte EXTENSION_TRACE = 2;
+    /**
+     * Tag of the extension entry holding the identifier of the message bus expecting a reply to a request as UTF-8 bytes
+     */
+    static final byte EXTENSION_REPLY_TO = 3;
+    /**
+     * Tag of the extension entry holding the message id of the request answered by a reply as UTF-8 bytes
+     */
+    static final byte EXTENSION_CORRELATION_ID = 4;
+
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+    private static final int EXTENSION_HEADER_LENGTH = 3;
+    private static final byte[] NO_EXTENSIONS = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor for the BinaryMessageCodec
+     */
+    public BinaryMessageCodec() {
+        this.objectMapper = new ObjectMapper(new CBORFactory());
+    }
+
+    /**
+     * @return First byte of every binary message
+     */
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * Encodes a message package with a binary header and a CBOR encoded message.
+     *
+     * @param messageType    Message Type class, which is provided inside the message package
+     * @param messagePackage Message package object with message meta data and the message object
+     * @return The binary representation of the given message package
+     * @throws Exception Throws an exception, if the the message package is malformed or the given message type is wrong
+     */
+    @Override
+    public OutboundMessage encode(Class<?> messageType, MessagePackage messagePackage) throws Exception {
+        Object message = messagePackage.getMessage();
+
+        if (messageType.isInstance(message)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            writeHeader(out, messagePackage.getTimeToLive(), messagePackage.getMessageId(), messagePackage.getSenderId(),
+                    messagePackage.getReceiverId(), messagePackage.getMessageType());
+            ByteArrayOutputStream extensions = new ByteArrayOutputStream(32);
+            writeExtension(extensions, EXTENSION_PUBLISHER, messagePackage.getSenderId());
+            if (messagePackage.getReplyTo() != null) {
+                writeExtension(extensions, EXTENSION_REPLY_TO, messagePackage.getReplyTo());
+            }
+            if (messagePackage.getCorrelationId() != null) {
+                writeExtension(extensions, EXTENSION_CORRELATION_ID, messagePackage.getCorrelationId());
+            }
+            if (messagePackage.getTrace() != null) {
+                writeTrace(extensions, messagePackage.getTrace());
+            }
+            if (extensions.size() > MAX_FIELD_LENGTH) {
+                throw new IllegalArgumentException("Extensions exceed " + MAX_FIELD_LENGTH + " bytes.");
+            }
+            writeShort(out, extensions.size());
+            extensions.writeTo(out);
+            objectMapper.writeValue(out, message);
+            return OutboundMessage.of(out.toByteArray());
+        } else {
+            throw new Exception("Wrong message type given: " + messageType.getSimpleName());
+        }
+    }
+
+    /**
+     * Decodes the binary header of a received message. The wrapped message is not decoded, only its position is stored in the envelope.
+     *
+     * @param data Received bytes of a binary message package
+     * @return Envelope holding the meta data and the position of the wrapped message
+     * @throws Exception Throws an exception, if the bytes are not a binary message package of a known version
+     */
+    @Override
+    public MessageEnvelope decode(byte[] data) throws Exception {
+        if (data.length < 2 || data[0] != FORMAT) {
+            throw new IllegalArgumentException("Received bytes are not a binary message package.");
+        }
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("Binary message version " + data[1] + " is not supported.");
+        }
+        try {
+            int position = 2;
+            int timeToLive = readInt(data, position);
+            position += 4;
+            String[] fields = new String[4];
+            for (int i = 0; i < fields.length; i++) {
+                int length = readShort(data, position);
+                fields[i] = new String(data, position + 2, length, StandardCharsets.UTF_8);
+                position += 2 + length;
+            }
+            int extensionsLength = readShort(data, position);
+            int[] extensions = extensionsLength == 0 ? null : new int[]{position + 2, position + 2 + extensionsLength};
+            position += 2 + extensionsLength;
+            if (position > data.length) {
+                throw new IllegalArgumentException("Received binary message package is truncated.");
+            }
+            String publisherId = "";
+            MessageTrace trace = null;
+            String replyTo = null;
+            String correlationId = null;
+            if (extensions != null) {
+                String publisher = readExtension(data, extensions, EXTENSION_PUBLISHER);
+                publisherId = publisher != null ? publisher : "";
+                int traceEntry = findExtension(data, extensions[0], extensions[1], EXTENSION_TRACE);
+                if (traceEntry >= 0) {
+                    trace = readTrace(data, traceEntry);
+                }
+                replyTo = readExtension(data, extensions, EXTENSION_REPLY_TO);
+                correlationId = readExtension(data, extensions, EXTENSION_CORRELATION_ID);
+            }
+            return new MessageEnvelope(this, fields[0], fields[1], publisherId, fields[2], fields[3], timeToLive,
+                    data, position, data.length - position, extensions, trace, replyTo, correlationId);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Received binary message package is truncated.", e);
+        }
+    }
+
+    /**
+     * Finds the message id, which directly follows the time to live.
+     *
+     * @param data   Buffer containing a received message package
+     * @param offset Position of the message package inside the buffer
+     * @param length Length of the message package
+     * @return Position and length of the message id or -1, if the bytes are not a binary message package of a known version
+     */
+    @Override
+    public long locateMessageId(byte[] data, int offset, int length) {
+        if (length < 8 || data[offset] != FORMAT || data[offset + 1] != VERSION) {
+            return -1;
+        }
+        int idLength = readShort(data, offset + 6);
+        if (8 + idLength > length || !MessageIds.isAscii(data, offset + 8, idLength)) {
+            return -1;
+        }
+        return ((long) (offset + 8) << 32) | idLength;
+    }
+
+    /**
+     * Encodes a received message again for forwarding it. Only the header is written again, extensions are copied from the received bytes.
+     * The outbound message references the wrapped message inside the received bytes, so it is not copied.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @return Binary representation of the forwarded message package
+     */
+    @Override
+    public OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId) {
+        return encodeForwarded(envelope, timeToLive, senderId, envelope.getTrace());
+    }
+
+    /**
+     * Encodes a received message again for forwarding it with an updated trace.
+     * All other extension entries are copied from the received bytes, the trace entry is written again.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @param trace      Trace of the message including the hop of this message bus or null, if the message is not traced
+     * @return Binary representation of the forwarded message package
+     */
+    @Override
+    public OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId, MessageTrace trace) {
+        byte[] data = envelope.getData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeHeader(out, timeToLive, envelope.getMessageId(), senderId, envelope.getReceiverId(), envelope.getMessageType());
+        int[] extensions = envelope.getUnknownFields();
+        int start = extensions != null ? extensions[0] : 0;
+        int end = extensions != null ? extensions[1] : 0;
+        // The received trace entry is skipped and replaced by the updated trace
+        int traceStart = envelope.getTrace() != null ? findExtension(data, start, end, EXTENSION_TRACE) : -1;
+        int traceEnd = traceStart < 0 ? end : traceStart + EXTENSION_HEADER_LENGTH + readShort(data, traceStart + 1);
+        if (traceStart < 0) {
+            traceStart = end;
+        }
+        writeShort(out, (traceStart - start) + (end - traceEnd) + (trace != null ? traceLength(trace) : 0));
+        out.write(data, start, traceStart - start);
+        out.write(data, traceEnd, end - traceEnd);
+        if (trace != null) {
+            writeTrace(out, trace);
+        }
+        return new OutboundMessage(out.toByteArray(), data, envelope.getPayloadOffset(), envelope.getPayloadLength(), NO_EXTENSIONS);
+    }
+
+    /**
+     * Binds the CBOR encoded message of an envelope to a java object.
+     *
+     * @param envelope    Envelope of a received message
+     * @param messageType Class of the wrapped message
+     * @param <T>         Type of the wrapped message
+     * @return The wrapped message object
+     * @throws Exception Throws an exception, if the message does not match the given class
+     */
+    @Override
+    public <T> T decodePayload(MessageEnvelope envelope, Class<T> messageType) throws Exception {
+        return objectMapper.readValue(envelope.getData(), envelope.getPayloadOffset(), envelope.getPayloadLength(), messageType);
+    }
+
+    /**
+     * Searches the extension entries for an entry with the given tag.
+     *
+     * @param data  Received bytes
+     * @param start Position of the first extension entry
+     * @param end   Position behind the last extension entry
+     * @param tag   Tag of the searched entry
+     * @return Position of the entry or -1, if there is no such entry
+     */
+    private static int findExtension(byte[] data, int start, int end, byte tag) {
+        int position = start;
+        while (position + EXTENSION_HEADER_LENGTH <= end) {
+            int length = readShort(data, position + 1);
+            if (data[position] == tag && position + EXTENSION_HEADER_LENGTH + length <= end) {
+                return position;
+            }
+            position += EXTENSION_HEADER_LENGTH + length;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the UTF-8 value of an extension entry.
+     *
+     * @param data       Received bytes
+     * @param extensions Start and end position of the extension entries
+     * @param tag        Tag of the entry
+     * @return Value of the entry or null, if there is no such entry
+     */
+    private static String readExtension(byte[] data, int[] extensions, byte tag) {
+        int entry = findExtension(data, extensions[0], extensions[1], tag);
+        return entry < 0 ? null : new String(data, entry + EXTENSION_HEADER_LENGTH, readShort(data, entry + 1), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the trace of an extension entry.
+     *
+     * @param data  Received bytes
+     * @param entry Position of the trace entry
+     * @return The trace or null, if the entry is malformed
+     */
+    private static MessageTrace readTrace(byte[] data, int entry) {
+        int length = readShort(data, entry + 1);
+        if (length < 12 || (length - 12) % 16 != 0) {
+            return null;
+        }
+        int position = entry + EXTENSION_HEADER_LENGTH;
+        long[] hops = new long[(length - 12) / 8];
+        for (int i = 0; i < hops.length; i++) {
+            hops[i] = readLong(data, position + 12 + i * 8);
+        }
+        return new MessageTrace(readLong(data, position), readInt(data, position + 8), hops);
+    }
+
+    /**
+     * Writes an extension entry with a UTF-8 value.
+     */
+    private static void writeExtension(ByteArrayOutputStream out, byte tag, String value) {
+        out.write(tag);
+        writeString(out, value);
+    }
+
+    /**
+     * Writes a trace as extension entry.
+     */
+    private static void writeTrace(ByteArrayOutputStream out, MessageTrace trace) {
+        long[] hops = trace.getHopTimestamps();
+        out.write(EXTENSION_TRACE);
+        writeShort(out, traceLength(trace) - EXTENSION_HEADER_LENGTH);
+        writeLong(out, trace.getOriginTimestamp());
+        writeInt(out, trace.getInitialTimeToLive());
+        for (long hop : hops) {
+            writeLong(out, hop);
+        }
+    }
+
+    /**
+     * @return Length of the extension entry of a trace including its tag and length
+     */
+    private static int traceLength(MessageTrace trace) {
+        return EXTENSION_HEADER_LENGTH + 12 + trace.getRelayCount() * 16;
+    }
+
+    /**
+     * Writes the header fields preceding the extensions.
+     */
+    private static void writeHeader(ByteArrayOutputStream out, int timeToLive, String messageId, String senderId, String receiverId, String messageType) {
+        out.write(FORMAT);
+        out.write(VERSION);
+        writeInt(out, timeToLive);
+        writeString(out, messageId);
+        writeString(out, senderId);
+        writeString(out, receiverId);
+        writeString(out, messageType);
+    }
+
+    /**
+     * Writes a string as 2 byte length followed by its UTF-8 bytes.
+     */
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Header field exceeds " + MAX_FIELD_LENGTH + " bytes.");
+        }
+        writeShort(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,63 @@
+package utilities;
+
+import mf.MessageHandler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A delivery queue based on an ArrayBlockingQueue. A delivery object is created for every message.
+ *
+ * @author Tobias Haider
+ * @see DeliveryQueueType#BLOCKING
+ */
+class BlockingDeliveryQueue implements DeliveryQueue {
+    private final ArrayBlockingQueue<MessageDelivery> queue;
+    private final MessageBusMetrics metrics;
+    private volatile MessageDelivery pending;
+
+    /**
+     * Constructor for an empty queue.
+     *
+     * @param capacity Maximal amount of queued messages
+     * @param metrics  Metrics recording the delivered messages
+     */
+    BlockingDeliveryQueue(int capacity, MessageBusMetrics metrics) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos) {
+        return queue.offer(new MessageDelivery(message, handler, senderId, receiveNanos));
+    }
+
+    @Override
+    public boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos, long timeoutMillis) throws InterruptedException {
+        return queue.offer(new MessageDelivery(message, handler, senderId, receiveNanos), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean deliverNext() {
+        MessageDelivery delivery = pending != null ? pending : queue.poll();
+        pending = null;
+        if (delivery == null) {
+            return false;
+        }
+        delivery.deliver(metrics);
+        return true;
+    }
+
+    @Override
+    public void awaitMessage() throws InterruptedException {
+        if (pending == null) {
+            // The message taken while waiting is delivered next
+            pending = queue.take();
+        }
+    }
+
+    @Override
+    public int size() {
+        return queue.size() + (pending != null ? 1 : 0);
+    }
+}
@@ -0,0 +1,22 @@
+package utilities;
+
+/**
+ * Behaviour of the message deliverer, when a received message should be delivered, but the delivery queue of its worker is full.
+ *
+ * @author Tobias Haider
+ * @see MessageDeliverer
+ */
+public enum DeliveryOverflowPolicy {
+    /**
+     * The receiving thread waits until the queue has room again. The receiver stops reading from the connection, so the peers are slowed down by TCP flow control.
+     */
+    BLOCK,
+    /**
+     * The message is written to a bounded buffer on disk and delivered once the queue was drained. If the disk buffer is full as well, the message is dropped.
+     */
+    SPILL,
+    /**
+     * The message is discarded. Dropped messages are counted and reported to the dropped message listener.
+     */
+    DROP
+}
@@ -0,0 +1,56 @@
+package utilities;
+
+import mf.MessageHandler;
+
+/**
+ * A bounded queue between the receiving threads and a single delivery worker.
+ * Any thread may add messages, but only the worker owning the queue may deliver them.
+ *
+ * @author Tobias Haider
+ * @see DeliveryQueueType
+ */
+interface DeliveryQueue {
+
+    /**
+     * Adds a message without waiting.
+     *
+     * @param message      Message to be delivered to the application
+     * @param handler      Handler of the message type
+     * @param senderId     Identifier of the neighbour, which sent the message
+     * @param receiveNanos Value of System.nanoTime() when the message was received
+     * @return The message was queued. If false, the queue is full.
+     */
+    boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos);
+
+    /**
+     * Adds a message, waiting a limited time for room in the queue.
+     *
+     * @param message       Message to be delivered to the application
+     * @param handler       Handler of the message type
+     * @param senderId      Identifier of the neighbour, which sent the message
+     * @param receiveNanos  Value of System.nanoTime() when the message was received
+     * @param timeoutMillis Maximal time to wait
+     * @return The message was queued. If false, the queue stayed full.
+     * @throws InterruptedException when the waiting thread was interrupted
+     */
+    boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos, long timeoutMillis) throws InterruptedException;
+
+    /**
+     * Delivers the oldest message to its handler, if there is one, and records the delivery in the metrics. Must only be called by the worker owning the queue.
+     *
+     * @return A message was delivered. If false, the queue was empty.
+     */
+    boolean deliverNext();
+
+    /**
+     * Waits until the queue contains a message. Must only be called by the worker owning the queue.
+     *
+     * @throws InterruptedException when the worker was interrupted
+     */
+    void awaitMessage() throws InterruptedException;
+
+    /**
+     * @return Approximate amount of queued messages
+     */
+    int size();
+}
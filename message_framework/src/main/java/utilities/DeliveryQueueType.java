@@ -0,0 +1,18 @@
+package utilities;
+
+/**
+ * Implementation of the queues between the receiving threads and the delivery workers.
+ *
+ * @author Tobias Haider
+ * @see MessageDeliverer
+ */
+public enum DeliveryQueueType {
+    /**
+     * A lock based blocking queue. Waiting workers do not use any CPU time. Every queued message is wrapped into a delivery object.
+     */
+    BLOCKING,
+    /**
+     * A lock-free ring buffer with preallocated slots, which are reused for every message. How a worker waits for messages is defined by the wait strategy.
+     */
+    RING_BUFFER
+}
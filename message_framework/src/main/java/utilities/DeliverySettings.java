@@ -0,0 +1,112 @@
+package utilities;
+
+import mf.DroppedMessageListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The DeliverySettings class bundles the configuration of the message deliverer of a message bus.
+ * Objects of this class are immutable and are created by the MessageBusFactory.
+ *
+ * @author Tobias Haider
+ * @see MessageDeliverer
+ */
+public class DeliverySettings {
+    private static final int DEFAULT_CONCURRENCY = 1;
+
+    private final int threads;
+    private final Map<String, Integer> handlerConcurrency;
+    private final ThreadingMode threadingMode;
+    private final DeliveryOverflowPolicy overflowPolicy;
+    private final long spillCapacity;
+    private final DroppedMessageListener droppedMessageListener;
+    private final DeliveryQueueType queueType;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Constructor for the delivery settings.
+     *
+     * @param threads                Amount of worker threads calling the message handlers
+     * @param handlerConcurrency     Amount of workers a message type may be delivered by at the same time, by the simple name of the message type
+     * @param threadingMode          Kind of threads used as workers
+     * @param overflowPolicy         Behaviour, when the queue of a worker is full
+     * @param spillCapacity          Size in bytes of the disk buffer used by the spill policy
+     * @param droppedMessageListener Listener notified about discarded messages or null
+     * @param queueType              Implementation of the queues of the workers
+     * @param waitStrategy           How workers wait for messages on a ring buffer
+     */
+    public DeliverySettings(int threads, Map<String, Integer> handlerConcurrency, ThreadingMode threadingMode,
+                            DeliveryOverflowPolicy overflowPolicy, long spillCapacity, DroppedMessageListener droppedMessageListener,
+                            DeliveryQueueType queueType, WaitStrategy waitStrategy) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one delivery thread is required.");
+        }
+        this.threads = threads;
+        this.handlerConcurrency = Collections.unmodifiableMap(new HashMap<>(handlerConcurrency));
+        this.threadingMode = threadingMode;
+        this.overflowPolicy = overflowPolicy;
+        this.spillCapacity = spillCapacity;
+        this.droppedMessageListener = droppedMessageListener;
+        this.queueType = queueType;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return Amount of worker threads calling the message handlers
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return Kind of threads used as workers
+     */
+    public ThreadingMode getThreadingMode() {
+        return threadingMode;
+    }
+
+    /**
+     * @return Behaviour, when the queue of a worker is full
+     */
+    public DeliveryOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return Size in bytes of the disk buffer used by the spill policy
+     */
+    public long getSpillCapacity() {
+        return spillCapacity;
+    }
+
+    /**
+     * @return Listener notified about discarded messages or null
+     */
+    public DroppedMessageListener getDroppedMessageListener() {
+        return droppedMessageListener;
+    }
+
+    /**
+     * @return Implementation of the queues of the workers
+     */
+    public DeliveryQueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * @return How workers wait for messages on a ring buffer
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @param messageType Simple name of a message type
+     * @return Amount of workers the message type may be delivered by at the same time. Messages of the same publisher are always delivered in order.
+     */
+    public int getConcurrency(String messageType) {
+        return handlerConcurrency.getOrDefault(messageType, DEFAULT_CONCURRENCY);
+    }
+}
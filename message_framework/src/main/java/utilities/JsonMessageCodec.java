@@ -0,0 +1,376 @@
+package utilities;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mf.MessagePackage;
+import mf.MessageTrace;
+import network.OutboundMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The JsonMessageCodec represents message packages as json objects. It is the format understood by all versions of the framework.
+ * The meta data is written before the wrapped message, so a streaming parser reads the meta data first.
+ * Traced messages carry an additional "trace" object, requests a "replyTo" field and replies a "correlationId" field.
+ * Older versions of the framework pass them on unchanged as unknown fields.
+ *
+ * @author Tobias Haider
+ * @see MessageCodec
+ */
+public class JsonMessageCodec implements MessageCodec {
+    /**
+     * First byte of every encoded message
+     */
+    public static final byte FORMAT = '{';
+
+    private static final byte[] OBJECT_END = {'}'};
+    private static final byte[] MESSAGE_ID_FIELD = "\"messageId\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor for the JsonMessageCodec
+     */
+    public JsonMessageCodec() {
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * @return First byte of every json message
+     */
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * Encodes a message package as json object.
+     * Please note, that this function can only work correctly, if the message object inside the message Package is an instance of the given message type class.
+     *
+     * @param messageType    Message Type class, which is provided inside the message package
+     * @param messagePackage Message package object with message meta data and the message object
+     * @return The json representation of the given message package in UTF-8
+     * @throws Exception Throws an exception, if the the message package is malformed or the given message type is wrong
+     */
+    @Override
+    public OutboundMessage encode(Class<?> messageType, MessagePackage messagePackage) throws Exception {
+        Object message = messagePackage.getMessage();
+
+        if (messageType.isInstance(message)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeStringField("messageId", messagePackage.getMessageId());
+                generator.writeStringField("senderId", messagePackage.getSenderId());
+                generator.writeStringField("publisherId", messagePackage.getSenderId());
+                generator.writeStringField("receiverId", messagePackage.getReceiverId());
+                generator.writeStringField("messageType", messagePackage.getMessageType());
+                generator.writeNumberField("timeToLive", messagePackage.getTimeToLive());
+                if (messagePackage.getReplyTo() != null) {
+                    generator.writeStringField("replyTo", messagePackage.getReplyTo());
+                }
+                if (messagePackage.getCorrelationId() != null) {
+                    generator.writeStringField("correlationId", messagePackage.getCorrelationId());
+                }
+                if (messagePackage.getTrace() != null) {
+                    generator.writeFieldName("trace");
+                    objectMapper.writeValue(generator, messagePackage.getTrace());
+                }
+                generator.writeFieldName("message");
+                objectMapper.writeValue(generator, message);
+                generator.writeEndObject();
+            }
+            return OutboundMessage.of(out.toByteArray());
+        } else {
+            throw new Exception("Wrong message type given: " + messageType.getSimpleName());
+        }
+    }
+
+    /**
+     * Decodes the meta data of a received message using a streaming parser.
+     * The wrapped message is skipped without building a json tree. Only its position is stored in the envelope, so it can be bound later, if necessary.
+     *
+     * @param json Json representation of a message package in UTF-8
+     * @return Envelope holding the meta data and the position of the wrapped message
+     * @throws Exception Throws an exception, if the json is not parsable or meta data is missing
+     */
+    @Override
+    public MessageEnvelope decode(byte[] json) throws Exception {
+        String messageId = null;
+        String senderId = "";
+        String publisherId = "";
+        String receiverId = "";
+        String messageType = null;
+        int timeToLive = 0;
+        int payloadOffset = -1;
+        int payloadLength = 0;
+        int[] unknownFields = null;
+        MessageTrace trace = null;
+        String replyTo = null;
+        String correlationId = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Received json is not a message package.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int fieldOffset = (int) parser.getTokenLocation().getByteOffset();
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("message")) {
+                    payloadOffset = (int) parser.getTokenLocation().getByteOffset();
+                    payloadLength = skipValue(parser) - payloadOffset;
+                } else if (field.equals("trace") && value == JsonToken.START_OBJECT) {
+                    trace = objectMapper.readValue(parser, MessageTrace.class);
+                } else if (value.isStructStart()) {
+                    // Header fields are never structured, so this must be a field of a newer framework version
+                    unknownFields = appendRange(unknownFields, fieldOffset, skipValue(parser));
+                } else {
+                    switch (field) {
+                        case "messageId":
+                            messageId = parser.getValueAsString();
+                            break;
+                        case "senderId":
+                            senderId = parser.getValueAsString("");
+                            break;
+                        case "publisherId":
+                            publisherId = parser.getValueAsString("");
+                            break;
+                        case "receiverId":
+                            receiverId = parser.getValueAsString("");
+                            break;
+                        case "messageType":
+                            messageType = parser.getValueAsString();
+                            break;
+                        case "timeToLive":
+                            timeToLive = parser.getValueAsInt();
+                            break;
+                        case "replyTo":
+                            replyTo = parser.getValueAsString();
+                            break;
+                        case "correlationId":
+                            correlationId = parser.getValueAsString();
+                            break;
+                        default:
+                            unknownFields = appendRange(unknownFields, fieldOffset, skipValue(parser));
+                    }
+                }
+            }
+        }
+        if (messageId == null || messageType == null || payloadOffset < 0) {
+            throw new IllegalArgumentException("Received json is not a message package.");
+        }
+        return new MessageEnvelope(this, messageId, senderId, publisherId, receiverId, messageType, timeToLive, json, payloadOffset, payloadLength, unknownFields, trace,
+                replyTo, correlationId);
+    }
+
+    /**
+     * Finds the message id with a scan of the first bytes. Message packages of this framework always start with the message id,
+     * so the scan only succeeds, if the message id is the first field. Message ids containing escape sequences are not located.
+     *
+     * @param data   Buffer containing a received message package
+     * @param offset Position of the message package inside the buffer
+     * @param length Length of the message package
+     * @return Position and length of the message id or -1, if the message id is not the first field
+     */
+    @Override
+    public long locateMessageId(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int position = skipWhitespace(data, offset, end);
+        if (position >= end || data[position] != '{') {
+            return -1;
+        }
+        position = skipWhitespace(data, position + 1, end);
+        if (end - position < MESSAGE_ID_FIELD.length) {
+            return -1;
+        }
+        for (byte b : MESSAGE_ID_FIELD) {
+            if (data[position++] != b) {
+                return -1;
+            }
+        }
+        position = skipWhitespace(data, position, end);
+        if (position >= end || data[position] != ':') {
+            return -1;
+        }
+        position = skipWhitespace(data, position + 1, end);
+        if (position >= end || data[position] != '"') {
+            return -1;
+        }
+        int start = position + 1;
+        for (int i = start; i < end; i++) {
+            if (data[i] == '"') {
+                return MessageIds.isAscii(data, start, i - start) ? ((long) start << 32) | (i - start) : -1;
+            }
+            if (data[i] == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the first byte, which is not json whitespace.
+     */
+    private static int skipWhitespace(byte[] data, int position, int end) {
+        while (position < end && (data[position] == ' ' || data[position] == '\t' || data[position] == '\r' || data[position] == '\n')) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Skips the current value of a parser including all nested values.
+     *
+     * @param parser Parser positioned at the first token of a value
+     * @return Position directly behind the value
+     */
+    private static int skipValue(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+        } else {
+            parser.finishToken();
+        }
+        return (int) parser.getCurrentLocation().getByteOffset();
+    }
+
+    /**
+     * Appends a start and end position to an array of ranges.
+     */
+    private static int[] appendRange(int[] ranges, int start, int end) {
+        int length = ranges == null ? 0 : ranges.length;
+        int[] appended = ranges == null ? new int[2] : Arrays.copyOf(ranges, length + 2);
+        appended[length] = start;
+        appended[length + 1] = end;
+        return appended;
+    }
+
+    /**
+     * Encodes a received message again for forwarding it.
+     * Only the meta data is written again. Unknown fields are copied from the received bytes.
+     * The wrapped message is neither parsed nor copied: the outbound message references its range inside the received bytes,
+     * so the bytes are written from there directly to the outgoing connections.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @return Json representation of the forwarded message package in UTF-8
+     */
+    @Override
+    public OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId) {
+        return encodeForwarded(envelope, timeToLive, senderId, envelope.getTrace());
+    }
+
+    /**
+     * Encodes a received message again for forwarding it with an updated trace. The trace is written like the other meta data,
+     * the wrapped message is referenced like for messages without a trace.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @param trace      Trace of the message including the hop of this message bus or null, if the message is not traced
+     * @return Json representation of the forwarded message package in UTF-8
+     */
+    @Override
+    public OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId, MessageTrace trace) {
+        byte[] data = envelope.getData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write('{');
+        writeField(out, "messageId", envelope.getMessageId());
+        out.write(',');
+        writeField(out, "senderId", senderId);
+        out.write(',');
+        if (!envelope.getPublisherId().isEmpty()) {
+            writeField(out, "publisherId", envelope.getPublisherId());
+            out.write(',');
+        }
+        writeField(out, "receiverId", envelope.getReceiverId());
+        out.write(',');
+        writeField(out, "messageType", envelope.getMessageType());
+        out.write(',');
+        writeAscii(out, "\"timeToLive\":");
+        writeAscii(out, Integer.toString(timeToLive));
+        if (envelope.getReplyTo() != null) {
+            out.write(',');
+            writeField(out, "replyTo", envelope.getReplyTo());
+        }
+        if (envelope.getCorrelationId() != null) {
+            out.write(',');
+            writeField(out, "correlationId", envelope.getCorrelationId());
+        }
+        if (trace != null) {
+            out.write(',');
+            writeTrace(out, trace);
+        }
+        int[] unknownFields = envelope.getUnknownFields();
+        if (unknownFields != null) {
+            for (int i = 0; i < unknownFields.length; i += 2) {
+                out.write(',');
+                out.write(data, unknownFields[i], unknownFields[i + 1] - unknownFields[i]);
+            }
+        }
+        out.write(',');
+        writeAscii(out, "\"message\":");
+        return new OutboundMessage(out.toByteArray(), data, envelope.getPayloadOffset(), envelope.getPayloadLength(), OBJECT_END);
+    }
+
+    /**
+     * Writes a json field with a string value.
+     */
+    private static void writeField(ByteArrayOutputStream out, String name, String value) {
+        out.write('"');
+        writeAscii(out, name);
+        writeAscii(out, "\":\"");
+        byte[] quoted = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        out.write(quoted, 0, quoted.length);
+        out.write('"');
+    }
+
+    /**
+     * Writes the trace field. All values are numbers, so no escaping is necessary.
+     */
+    private static void writeTrace(ByteArrayOutputStream out, MessageTrace trace) {
+        writeAscii(out, "\"trace\":{\"origin\":");
+        writeAscii(out, Long.toString(trace.getOriginTimestamp()));
+        writeAscii(out, ",\"ttl\":");
+        writeAscii(out, Integer.toString(trace.getInitialTimeToLive()));
+        writeAscii(out, ",\"hops\":[");
+        long[] hops = trace.getHopTimestamps();
+        for (int i = 0; i < hops.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeAscii(out, Long.toString(hops[i]));
+        }
+        writeAscii(out, "]}");
+    }
+
+    /**
+     * Writes a string only consisting of ASCII characters.
+     */
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Binds the wrapped message of an envelope to a java object. Only at this point the wrapped message is actually parsed.
+     *
+     * @param envelope    Envelope of a received message
+     * @param messageType Class of the wrapped message
+     * @param <T>         Type of the wrapped message
+     * @return The wrapped message object
+     * @throws Exception Throws an exception, if the message does not match the given class
+     */
+    @Override
+    public <T> T decodePayload(MessageEnvelope envelope, Class<T> messageType) throws Exception {
+        return objectMapper.readValue(envelope.getData(), envelope.getPayloadOffset(), envelope.getPayloadLength(), messageType);
+    }
+}
@@ -0,0 +1,97 @@
+package utilities;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A latency histogram recording into an HDR recorder, which neither locks nor creates objects while recording.
+ * Readers collect the recorded values into a histogram of all values since the start and into the pending values of every interval reader,
+ * so several metrics registries can report the latencies of their own reporting intervals from the same histogram.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Tobias Haider
+ * @see MessageBusMetrics
+ */
+final class LatencyHistogram {
+    private final Recorder recorder;
+    private final Histogram total;
+    private final List<Interval> intervals;
+    private Histogram collected;
+
+    /**
+     * Constructor for an empty latency histogram
+     *
+     * @param highestTrackableValue Highest value in nanoseconds, which can be recorded
+     * @param significantDigits     Precision of the recorded values
+     */
+    LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        this.recorder = new Recorder(highestTrackableValue, significantDigits);
+        this.total = new Histogram(highestTrackableValue, significantDigits);
+        this.intervals = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * @param nanos Latency in nanoseconds, which has to be between zero and the highest trackable value
+     */
+    void recordValue(long nanos) {
+        recorder.recordValue(nanos);
+    }
+
+    /**
+     * @return Copy of the histogram of all values recorded since the start
+     */
+    synchronized Histogram copy() {
+        collect();
+        return total.copy();
+    }
+
+    /**
+     * Creates a reader of the values recorded from now on.
+     *
+     * @return Reader returning the values recorded since its last read
+     */
+    synchronized Interval newInterval() {
+        collect();
+        Interval interval = new Interval(total.getHighestTrackableValue(), total.getNumberOfSignificantValueDigits());
+        intervals.add(interval);
+        return interval;
+    }
+
+    /**
+     * Moves the values recorded since the last call into the total histogram and the pending values of all interval readers.
+     */
+    private void collect() {
+        collected = recorder.getIntervalHistogram(collected);
+        total.add(collected);
+        for (Interval interval : intervals) {
+            interval.pending.add(collected);
+        }
+    }
+
+    /**
+     * Reader of the values recorded between two reads.
+     */
+    final class Interval {
+        private final Histogram pending;
+
+        private Interval(long highestTrackableValue, int significantDigits) {
+            this.pending = new Histogram(highestTrackableValue, significantDigits);
+        }
+
+        /**
+         * @return Histogram of the values recorded since the last call
+         */
+        Histogram next() {
+            synchronized (LatencyHistogram.this) {
+                collect();
+                Histogram values = pending.copy();
+                pending.reset();
+                return values;
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package utilities;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The MessageBusMetrics class collects the metrics of a message bus: counters of the processed messages, the depths of its queues
+ * and latency histograms. The counters are broken down by message type and by peer.
+ * <ul>
+ * <li>published: Messages published by the application</li>
+ * <li>sent: Copies of published and forwarded messages queued for a neighbour</li>
+ * <li>received: Messages received from a neighbour for the first time</li>
+ * <li>forwarded: Received messages passed on to other message buses</li>
+ * <li>delivered: Messages processed by a message handler of the application</li>
+ * <li>deduplicated: Received messages ignored, because they were already received before</li>
+ * <li>dropped: Messages discarded, because an outbound queue or a delivery queue was full</li>
+ * </ul>
+ * Latencies are recorded in nanoseconds into HDR recorders, which neither lock nor create objects while recording:
+ * the time to write a message or a batch of messages to a peer, the time to parse a received message,
+ * the time from receiving a message until it was queued for forwarding, until its handler started and until its handler returned,
+ * and the time spent in the handler itself.
+ * The transit time from the publisher to this message bus is only known for traced messages and is measured with the wall clocks of both message buses.
+ * The latency getters return all values since the start, while metrics libraries read the values of their reporting intervals.
+ * <p>
+ * This class is thread safe. The recording methods are called by the framework, the application only reads the metrics.
+ *
+ * @author Tobias Haider
+ * @see MessageCounter
+ * @see MicrometerMetricsBinder
+ */
+public class MessageBusMetrics {
+    /**
+     * Latencies above one minute are recorded as one minute
+     */
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final MessageCounter published;
+    private final MessageCounter sent;
+    private final MessageCounter received;
+    private final MessageCounter forwarded;
+    private final MessageCounter delivered;
+    private final MessageCounter deduplicated;
+    private final MessageCounter dropped;
+
+    private final LatencyHistogram sendLatency;
+    private final LatencyHistogram parseLatency;
+    private final LatencyHistogram dispatchLatency;
+    private final LatencyHistogram queueLatency;
+    private final LatencyHistogram handlerLatency;
+    private final LatencyHistogram forwardLatency;
+    private final LatencyHistogram transitLatency;
+
+    private volatile Supplier<Map<String, Integer>> outboundQueueDepths;
+    private volatile IntSupplier deliveryQueueDepth;
+    private volatile IntSupplier messageIdCount;
+    private volatile Consumer<String> outboundPeerListener;
+
+    /**
+     * Constructor for empty metrics. Queue depths are reported as zero, until their sources are registered.
+     */
+    public MessageBusMetrics() {
+        this.published = new MessageCounter("published");
+        this.sent = new MessageCounter("sent");
+        this.received = new MessageCounter("received");
+        this.forwarded = new MessageCounter("forwarded");
+        this.delivered = new MessageCounter("delivered");
+        this.deduplicated = new MessageCounter("deduplicated");
+        this.dropped = new MessageCounter("dropped");
+        this.sendLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.parseLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.dispatchLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.queueLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.handlerLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.forwardLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.transitLatency = new LatencyHistogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        this.outboundQueueDepths = Collections::emptyMap;
+        this.deliveryQueueDepth = () -> 0;
+        this.messageIdCount = () -> 0;
+    }
+
+    /**
+     * Registers the sources of the queue depths. Called by the message bus once all its parts exist.
+     *
+     * @param outboundQueueDepths Depth of the outbound queue of every outgoing connection
+     * @param deliveryQueueDepth  Amount of messages waiting for delivery
+     * @param messageIdCount      Amount of message ids stored for detecting duplicates
+     */
+    public void registerGauges(Supplier<Map<String, Integer>> outboundQueueDepths, IntSupplier deliveryQueueDepth, IntSupplier messageIdCount) {
+        this.outboundQueueDepths = outboundQueueDepths;
+        this.deliveryQueueDepth = deliveryQueueDepth;
+        this.messageIdCount = messageIdCount;
+    }
+
+    /**
+     * Records the time needed to write messages to a peer.
+     *
+     * @param startNanos Value of System.nanoTime() before writing
+     */
+    public void recordSend(long startNanos) {
+        record(sendLatency, startNanos);
+    }
+
+    /**
+     * Records the time needed to parse a received message.
+     *
+     * @param startNanos Value of System.nanoTime() before parsing
+     */
+    public void recordParse(long startNanos) {
+        record(parseLatency, startNanos);
+    }
+
+    /**
+     * Records the time from receiving a message until it was queued for all neighbours it is forwarded to.
+     *
+     * @param receiveNanos Value of System.nanoTime() when the message was received
+     */
+    public void recordForward(long receiveNanos) {
+        record(forwardLatency, receiveNanos);
+    }
+
+    /**
+     * Records the time a traced message needed from its publisher to this message bus.
+     *
+     * @param originTimestamp  Time the message was published in microseconds since the epoch
+     * @param receiveTimestamp Time this message bus received the message in microseconds since the epoch
+     */
+    public void recordTransit(long originTimestamp, long receiveTimestamp) {
+        recordValue(transitLatency, TimeUnit.MICROSECONDS.toNanos(receiveTimestamp - originTimestamp));
+    }
+
+    /**
+     * Counts a delivered message and records the time it waited in the delivery queue, the time spent in its handler and the time since it was received.
+     *
+     * @param messageType  Simple name of the message type
+     * @param peer         Identifier of the neighbour, which sent the message
+     * @param receiveNanos Value of System.nanoTime() when the message was received or 0, if it is unknown
+     * @param startNanos   Value of System.nanoTime() before the handler was called
+     */
+    public void recordDelivery(String messageType, String peer, long receiveNanos, long startNanos) {
+        long endNanos = System.nanoTime();
+        delivered.increment(messageType, peer);
+        recordValue(handlerLatency, endNanos - startNanos);
+        if (receiveNanos != 0) {
+            recordValue(queueLatency, startNanos - receiveNanos);
+            recordValue(dispatchLatency, endNanos - receiveNanos);
+        }
+    }
+
+    /**
+     * Announces a new outgoing connection, so a metrics library can report the depth of its outbound queue.
+     *
+     * @param peer Identifier of the communication partner
+     */
+    public void outboundPeerAdded(String peer) {
+        Consumer<String> listener = outboundPeerListener;
+        if (listener != null) {
+            listener.accept(peer);
+        }
+    }
+
+    private static void record(LatencyHistogram histogram, long startNanos) {
+        recordValue(histogram, System.nanoTime() - startNanos);
+    }
+
+    private static void recordValue(LatencyHistogram histogram, long nanos) {
+        // Clocks of different hosts may be skewed, so negative values are recorded as zero
+        histogram.recordValue(Math.max(Math.min(nanos, MAX_LATENCY_NANOS), 0));
+    }
+
+    /**
+     * @return Counter of messages published by the application
+     */
+    public MessageCounter getPublished() {
+        return published;
+    }
+
+    /**
+     * @return Counter of message copies queued for a neighbour
+     */
+    public MessageCounter getSent() {
+        return sent;
+    }
+
+    /**
+     * @return Counter of messages received for the first time
+     */
+    public MessageCounter getReceived() {
+        return received;
+    }
+
+    /**
+     * @return Counter of received messages passed on to other message buses
+     */
+    public MessageCounter getForwarded() {
+        return forwarded;
+    }
+
+    /**
+     * @return Counter of messages processed by a message handler
+     */
+    public MessageCounter getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return Counter of ignored duplicates. Duplicates rejected before parsing are only counted in total.
+     */
+    public MessageCounter getDeduplicated() {
+        return deduplicated;
+    }
+
+    /**
+     * @return Counter of messages discarded because of a full queue. Messages dropped from an outbound queue are only counted by peer.
+     */
+    public MessageCounter getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds needed to write a message or a batch of messages to a peer
+     */
+    public Histogram getSendLatency() {
+        return sendLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds needed to parse a received message
+     */
+    public Histogram getParseLatency() {
+        return parseLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds from receiving a message until its handler returned
+     */
+    public Histogram getDispatchLatency() {
+        return dispatchLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds a received message waited for a free delivery thread
+     */
+    public Histogram getQueueLatency() {
+        return queueLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds spent in the message handlers of the application
+     */
+    public Histogram getHandlerLatency() {
+        return handlerLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds from receiving a message until it was queued for forwarding
+     */
+    public Histogram getForwardLatency() {
+        return forwardLatency.copy();
+    }
+
+    /**
+     * @return Copy of the histogram of the time in nanoseconds traced messages needed from their publisher to this message bus
+     */
+    public Histogram getTransitLatency() {
+        return transitLatency.copy();
+    }
+
+    /**
+     * @return Depth of the outbound queue of every outgoing connection
+     */
+    public Map<String, Integer> getOutboundQueueDepths() {
+        return outboundQueueDepths.get();
+    }
+
+    /**
+     * @return Amount of messages waiting for delivery to the application
+     */
+    public int getDeliveryQueueDepth() {
+        return deliveryQueueDepth.getAsInt();
+    }
+
+    /**
+     * @return Amount of message ids currently stored for detecting duplicates
+     */
+    public int getMessageIdCount() {
+        return messageIdCount.getAsInt();
+    }
+
+    /**
+     * @return All counters of the message bus
+     */
+    MessageCounter[] counters() {
+        return new MessageCounter[]{published, sent, received, forwarded, delivered, deduplicated, dropped};
+    }
+
+    /**
+     * Registers the listener notified about new outgoing connections. The listener is called for the already known connections first.
+     *
+     * @param listener Listener notified with the identifier of every new communication partner
+     */
+    synchronized void setOutboundPeerListener(Consumer<String> listener) {
+        this.outboundPeerListener = listener;
+        getOutboundQueueDepths().keySet().forEach(listener);
+    }
+
+    /**
+     * Histograms used by the metrics binder for reading the latencies of its reporting intervals.
+     */
+    LatencyHistogram sendHistogram() {
+        return sendLatency;
+    }
+
+    LatencyHistogram parseHistogram() {
+        return parseLatency;
+    }
+
+    LatencyHistogram dispatchHistogram() {
+        return dispatchLatency;
+    }
+
+    LatencyHistogram queueHistogram() {
+        return queueLatency;
+    }
+
+    LatencyHistogram handlerHistogram() {
+        return handlerLatency;
+    }
+
+    LatencyHistogram forwardHistogram() {
+        return forwardLatency;
+    }
+
+    LatencyHistogram transitHistogram() {
+        return transitLatency;
+    }
+}
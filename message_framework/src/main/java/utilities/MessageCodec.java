@@ -0,0 +1,91 @@
+package utilities;
+
+import mf.MessagePackage;
+import mf.MessageTrace;
+import network.OutboundMessage;
+
+/**
+ * A MessageCodec defines how message packages are represented on the wire.
+ * Every encoded message starts with the format byte of its codec, so a receiver can choose the right codec for every single message.
+ * Relays forward messages in the format they were received in, without decoding the wrapped message.
+ *
+ * @author Tobias Haider
+ * @see MessageConverter
+ * @see JsonMessageCodec
+ * @see BinaryMessageCodec
+ */
+public interface MessageCodec {
+
+    /**
+     * @return First byte of every message encoded by this codec
+     */
+    byte getFormat();
+
+    /**
+     * Encodes a message package, which is published by this message bus.
+     *
+     * @param messageType    Message Type class, which is provided inside the message package
+     * @param messagePackage Message package object with message meta data and the message object
+     * @return The encoded message package
+     * @throws Exception Throws an exception, if the message object can not be encoded
+     */
+    OutboundMessage encode(Class<?> messageType, MessagePackage messagePackage) throws Exception;
+
+    /**
+     * Decodes the meta data of a received message. The wrapped message is not decoded.
+     *
+     * @param data Received bytes of a message package
+     * @return Envelope holding the meta data and the position of the wrapped message
+     * @throws Exception Throws an exception, if the bytes are not a message package of this format
+     */
+    MessageEnvelope decode(byte[] data) throws Exception;
+
+    /**
+     * Finds the message id inside received bytes without decoding them, so duplicates can be rejected before any parsing.
+     * Codecs, which can not find the message id at a fixed position, return -1 and received messages are decoded completely.
+     *
+     * @param data   Buffer containing a received message package
+     * @param offset Position of the message package inside the buffer
+     * @param length Length of the message package
+     * @return Position of the first byte of the message id in the upper 32 bits and its length in the lower 32 bits or -1,
+     * if the message id was not found or is not plain ASCII
+     */
+    default long locateMessageId(byte[] data, int offset, int length) {
+        return -1;
+    }
+
+    /**
+     * Encodes a received message again for forwarding it. Only the meta data may be written again, the wrapped message should be referenced.
+     *
+     * @param envelope   Envelope of the received message, which was decoded by this codec
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @return The encoded message package
+     */
+    OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId);
+
+    /**
+     * Encodes a received message again for forwarding it with an updated trace.
+     * Codecs, which do not support tracing, forward the message without a trace.
+     *
+     * @param envelope   Envelope of the received message, which was decoded by this codec
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @param trace      Trace of the message including the hop of this message bus or null, if the message is not traced
+     * @return The encoded message package
+     */
+    default OutboundMessage encodeForwarded(MessageEnvelope envelope, int timeToLive, String senderId, MessageTrace trace) {
+        return encodeForwarded(envelope, timeToLive, senderId);
+    }
+
+    /**
+     * Binds the wrapped message of an envelope to a java object.
+     *
+     * @param envelope    Envelope of a received message, which was decoded by this codec
+     * @param messageType Class of the wrapped message
+     * @param <T>         Type of the wrapped message
+     * @return The wrapped message object
+     * @throws Exception Throws an exception, if the message does not match the given class
+     */
+    <T> T decodePayload(MessageEnvelope envelope, Class<T> messageType) throws Exception;
+}
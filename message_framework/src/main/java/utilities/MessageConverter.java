@@ -1,36 +1,67 @@
 package utilities;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import mf.MessageBusController;
 import mf.MessagePackage;
+import mf.MessageTrace;
+import network.OutboundMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.NoSuchElementException;
 
 /**
- * The MessageConverter class is a pure utility class used for dealing with Json and conversion between Json and java objects.
+ * The MessageConverter class is a pure utility class used for the conversion between message packages and their representation on the wire.
+ * The actual representation is defined by the codecs. Every message bus encodes its messages with one codec, but decodes messages of all known codecs.
  * The provided methods should only be used by the MessageBus, since many operations can throw exception, when called with wrong-structured parameters.
  *
  * @see MessageBusController
+ * @see MessageCodec
  */
 public class MessageConverter {
     private final ObjectMapper objectMapper;
     private final SubscriptionService subscriptions;
+    private final MessageCodec codec;
+    private final MessageCodec[] codecs;
 
     private static Logger logger = LoggerFactory.getLogger(MessageConverter.class);
 
+    /**
+     * Constructor for the MessageConverter, which encodes messages as json.
+     *
+     * @param subscriptions Subscriptions of the message bus
+     */
+    public MessageConverter(SubscriptionService subscriptions) {
+        this(subscriptions, new JsonMessageCodec());
+    }
+
     /**
      * Constructor for the MessageConverter
-     * Instantiates an empty Set for the subscribed message types.
      * Instantiated the object mapper using external libraries.
+     * Received messages are decoded by the json codec, the binary codec or the given codec, depending on their first byte.
+     *
+     * @param subscriptions Subscriptions of the message bus
+     * @param codec         Codec used for encoding published messages
      */
-    public MessageConverter(SubscriptionService subscriptions) {
+    public MessageConverter(SubscriptionService subscriptions, MessageCodec codec) {
         objectMapper = new ObjectMapper();
         this.subscriptions = subscriptions;
+        this.codec = codec;
+        this.codecs = new MessageCodec[256];
+        register(new JsonMessageCodec());
+        register(new BinaryMessageCodec());
+        register(codec);
+    }
+
+    /**
+     * Makes a codec available for decoding received messages starting with its format byte.
+     *
+     * @param codec Codec decoding received messages
+     */
+    private void register(MessageCodec codec) {
+        codecs[codec.getFormat() & 0xFF] = codec;
     }
 
     /**
@@ -54,6 +85,15 @@ public class MessageConverter {
             root.put("receiverId", messagePackage.getReceiverId());
             root.put("messageType", messagePackage.getMessageType());
             root.put("timeToLive", messagePackage.getTimeToLive());
+            if (messagePackage.getTrace() != null) {
+                root.putPOJO("trace", messagePackage.getTrace());
+            }
+            if (messagePackage.getReplyTo() != null) {
+                root.put("replyTo", messagePackage.getReplyTo());
+            }
+            if (messagePackage.getCorrelationId() != null) {
+                root.put("correlationId", messagePackage.getCorrelationId());
+            }
             return root.toString();
         } else {
             throw new Exception("Wrong message type given: " + messageType.getSimpleName());
@@ -69,17 +109,13 @@ public class MessageConverter {
      * @throws Exception Throws an exception, if the message type is not known or can not be parsed correctly.
      */
     public MessagePackage convertToMessagePackage(String json) throws Exception {
-        JsonNode node = objectMapper.readTree(json);
-        String messageId = node.get("messageId").asText();
-        String senderId = node.get("senderId").asText();
-        String receiverId = node.get("receiverId").asText();
-        String messageType = node.get("messageType").asText();
-        int timeToLive = node.get("timeToLive").asInt();
-        String messageString = node.get("message").toString();
+        MessageEnvelope envelope = parse(json.getBytes(StandardCharsets.UTF_8));
+        String messageType = envelope.getMessageType();
 
         if (subscriptions.contains(messageType)) {
-            Object message = objectMapper.readValue(messageString, subscriptions.getType(messageType));
-            return new MessagePackage(messageId, senderId, receiverId, messageType, timeToLive, message);
+            Object message = convertPayload(envelope, subscriptions.getType(messageType));
+            return new MessagePackage(envelope.getMessageId(), envelope.getSenderId(), envelope.getReceiverId(), messageType, envelope.getTimeToLive(), message,
+                    envelope.getTrace(), envelope.getReplyTo(), envelope.getCorrelationId());
         } else {
             NoSuchElementException exception = new NoSuchElementException("Message type " + messageType + "not known to the messaging bus.");
             logger.error("Could not convert json to message package.", exception);
@@ -88,42 +124,92 @@ public class MessageConverter {
     }
 
     /**
-     * Function used for retrieving a value from a json string.
+     * Encodes a message package with the codec of this message bus.
      *
-     * @param json      Json Message containing a certain field
-     * @param valueName The name (key) of the json field
-     * @return The value assigned to a field name
+     * @param messageType    Message Type class, which is provided inside the message package
+     * @param messagePackage Message package object with message meta data and the message object
+     * @return The encoded message package
+     * @throws Exception Throws an exception, if the the message package is malformed or the given message type is wrong
      */
-    public String getValue(String json, String valueName) {
-        try {
-            JsonNode root = objectMapper.readTree(json);
-            if (root.has(valueName)) {
-                return root.get(valueName).asText();
-            }
-        } catch (JsonProcessingException e) {
-            logger.error("Could not process json", e);
+    public OutboundMessage encode(Class<?> messageType, MessagePackage messagePackage) throws Exception {
+        return codec.encode(messageType, messagePackage);
+    }
+
+    /**
+     * Parses the meta data of a received message exactly once. The codec is chosen by the first byte of the message,
+     * so messages are understood regardless of the codec used by the sending message bus.
+     *
+     * @param data Received bytes of a message package
+     * @return Envelope holding the meta data and the position of the wrapped message
+     * @throws Exception Throws an exception, if the format is unknown, the message is not parsable or meta data is missing
+     */
+    public MessageEnvelope parse(byte[] data) throws Exception {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Received an empty message.");
+        }
+        MessageCodec decoder = codecs[data[0] & 0xFF];
+        if (decoder == null) {
+            // Json may start with whitespace
+            decoder = codecs[JsonMessageCodec.FORMAT];
         }
-        return "";
+        return decoder.decode(data);
     }
 
     /**
-     * Basic function for setting a new value to a json field
+     * Finds the message id inside received bytes without decoding them. The codec is chosen like for parsing.
      *
-     * @param json      Json Message containing a certain field
-     * @param valueName The name (key) of the json field
-     * @param value     The value assigned to a field name
-     * @return Resulting manipulated json string
-     * @throws Exception Field name can not be found or json is not parsable
+     * @param data   Buffer containing a received message package
+     * @param offset Position of the message package inside the buffer
+     * @param length Length of the message package
+     * @return Position of the message id in the upper 32 bits and its length in the lower 32 bits or -1, if the codec can not locate it
      */
-    public String setValue(String json, String valueName, String value) throws Exception {
-        JsonNode root = objectMapper.readTree(json);
-        if (root.has(valueName)) {
-            ((ObjectNode) root).put(valueName, value);
-            return root.toString();
-        } else {
-            IllegalArgumentException exception = new IllegalArgumentException("Field " + valueName + " not found");
-            logger.error("Could not find value.", exception);
-            throw exception;
+    public long locateMessageId(byte[] data, int offset, int length) {
+        if (length == 0) {
+            return -1;
         }
+        MessageCodec decoder = codecs[data[offset] & 0xFF];
+        if (decoder == null) {
+            decoder = codecs[JsonMessageCodec.FORMAT];
+        }
+        return decoder.locateMessageId(data, offset, length);
+    }
+
+    /**
+     * Creates the representation of a received message, which should be forwarded.
+     * The message is forwarded in the format it was received in, so peers only need to understand the codec of the original sender.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @return Representation of the forwarded message package
+     */
+    public OutboundMessage convertToForwardedMessage(MessageEnvelope envelope, int timeToLive, String senderId) {
+        return envelope.getCodec().encodeForwarded(envelope, timeToLive, senderId);
+    }
+
+    /**
+     * Creates the representation of a received message, which should be forwarded with an updated trace.
+     *
+     * @param envelope   Envelope of the received message
+     * @param timeToLive Remaining amount of hops
+     * @param senderId   Identifier of the forwarding message bus
+     * @param trace      Trace of the message including the hop of this message bus or null, if the message is not traced
+     * @return Representation of the forwarded message package
+     */
+    public OutboundMessage convertToForwardedMessage(MessageEnvelope envelope, int timeToLive, String senderId, MessageTrace trace) {
+        return envelope.getCodec().encodeForwarded(envelope, timeToLive, senderId, trace);
+    }
+
+    /**
+     * Binds the wrapped message of an envelope to a java object. Only at this point the wrapped message is actually parsed.
+     *
+     * @param envelope    Envelope of a received message
+     * @param messageType Class of the wrapped message
+     * @param <T>         Type of the wrapped message
+     * @return The wrapped message object
+     * @throws Exception Throws an exception, if the message does not match the given class
+     */
+    public <T> T convertPayload(MessageEnvelope envelope, Class<T> messageType) throws Exception {
+        return envelope.getCodec().decodePayload(envelope, messageType);
     }
 }
@@ -0,0 +1,145 @@
+package utilities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter of messages, broken down by message type and by peer. The peer is the neighbour a message was received from or sent to.
+ * Counting uses striped adders, so threads counting at the same time do not contend. Only the first message of a new message type or peer creates objects.
+ * Message types and peers are supplied by other message buses, so the amount of keys per dimension is limited. Messages of further keys are counted
+ * under a shared overflow key, which keeps the memory and the amount of meters registered with a metrics library bounded.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Tobias Haider
+ * @see MessageBusMetrics
+ */
+public class MessageCounter {
+    /**
+     * Maximal amount of distinct message types and of distinct peers counted separately
+     */
+    static final int MAX_KEYS = 256;
+    /**
+     * Key counting the messages of all message types or peers beyond the maximal amount of keys. Never the simple name of a java class.
+     */
+    public static final String OVERFLOW_KEY = "t-bus:other";
+
+    private final String name;
+    private final LongAdder total;
+    private final Map<String, LongAdder> byType;
+    private final Map<String, LongAdder> byPeer;
+    private volatile KeyListener listener;
+
+    /**
+     * Constructor for a counter starting at zero.
+     *
+     * @param name Name of the counted event, for example "received"
+     */
+    MessageCounter(String name) {
+        this.name = name;
+        this.total = new LongAdder();
+        this.byType = new ConcurrentHashMap<>();
+        this.byPeer = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Counts a message.
+     *
+     * @param messageType Simple name of the message type or null, if it is unknown
+     * @param peer        Identifier of the neighbour or null, if it is unknown
+     */
+    public void increment(String messageType, String peer) {
+        total.increment();
+        if (messageType != null) {
+            adder(byType, messageType, "type").increment();
+        }
+        if (peer != null) {
+            adder(byPeer, peer, "peer").increment();
+        }
+    }
+
+    /**
+     * Returns the adder of a key. The adder is only created for the first message of the key. Once the maximal amount of keys is reached,
+     * the adder of the overflow key is returned for new keys.
+     */
+    private LongAdder adder(Map<String, LongAdder> adders, String key, String dimension) {
+        LongAdder adder = adders.get(key);
+        if (adder == null && adders.size() >= MAX_KEYS) {
+            key = OVERFLOW_KEY;
+            adder = adders.get(key);
+        }
+        if (adder == null) {
+            LongAdder created = new LongAdder();
+            adder = adders.putIfAbsent(key, created);
+            if (adder == null) {
+                adder = created;
+                KeyListener current = listener;
+                if (current != null) {
+                    current.keyAdded(dimension, key, created);
+                }
+            }
+        }
+        return adder;
+    }
+
+    /**
+     * @return Name of the counted event
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Amount of counted messages
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * @return Amount of counted messages by the simple name of their message type. Message types beyond the maximal amount of keys are counted under the overflow key.
+     */
+    public Map<String, Long> getCountsByType() {
+        return snapshot(byType);
+    }
+
+    /**
+     * @return Amount of counted messages by the identifier of the neighbour they were received from or sent to. Peers beyond the maximal amount of keys are counted under the overflow key.
+     */
+    public Map<String, Long> getCountsByPeer() {
+        return snapshot(byPeer);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> adders) {
+        Map<String, Long> counts = new HashMap<>();
+        adders.forEach((key, adder) -> counts.put(key, adder.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Registers the listener notified about new message types and peers. The listener is called for the already known keys first.
+     *
+     * @param listener Listener notified once for every key
+     */
+    synchronized void setKeyListener(KeyListener listener) {
+        this.listener = listener;
+        byType.forEach((key, adder) -> listener.keyAdded("type", key, adder));
+        byPeer.forEach((key, adder) -> listener.keyAdded("peer", key, adder));
+    }
+
+    /**
+     * Listener notified, when a message type or peer is counted for the first time. Used to register the adder of the key with a metrics library.
+     */
+    interface KeyListener {
+
+        /**
+         * @param dimension "type" or "peer"
+         * @param key       Simple name of the message type or identifier of the peer
+         * @param adder     Adder counting the messages of the key
+         */
+        void keyAdded(String dimension, String key, LongAdder adder);
+    }
+}
@@ -1,22 +1,41 @@
 package utilities;
 
+import mf.DroppedMessageListener;
 import mf.MessageHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * A thread delivering message objects to the application in a synchronous way.
+ * A pool of worker threads delivering message objects to the application.
+ * Every worker has its own queue. A message is assigned to a worker by its message type, so messages of the same type are delivered in order,
+ * while a slow handler does not stall the delivery of other message types handled by other workers.
+ * If a message type may be delivered by several workers at the same time, its messages are additionally partitioned by their publisher,
+ * so messages of the same publisher are still delivered in order, even if they were forwarded by different neighbours.
+ * With virtual threads, workers are cheap, so thousands of workers can be used for handlers blocking for a long time.
+ * <p>
+ * The queues are either lock based blocking queues, which wrap every message into a delivery object, or lock-free ring buffers, which reuse preallocated slots
+ * and do not create any objects per queued message.
+ * If the queue of a worker is full, the overflow policy decides whether the receiving thread waits, the message is spilled to disk or the message is dropped.
+ * Delivered and dropped messages are recorded in the metrics of the message bus.
  *
  * @author Tobias Haider
  * @see MessageHandler
+ * @see DeliverySettings
+ * @see DeliveryOverflowPolicy
+ * @see DeliveryQueueType
  */
-public class MessageDeliverer extends Thread {
-    private final ArrayBlockingQueue<MessageDelivery> queue;
-    private boolean running;
+public class MessageDeliverer {
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    private final DeliverySettings settings;
+    private final Worker[] workers;
+    private final LongAdder droppedMessages;
+    private final MessageBusMetrics metrics;
+    private volatile boolean running;
 
     private static Logger logger = LoggerFactory.getLogger(MessageDeliverer.class);
 
@@ -24,41 +43,279 @@ public class MessageDeliverer extends Thread {
      * Constructor for a message deliverer. Configures the number of cashed messages.
      *
      * @param capacity Maximal amount of messages to be cached.
+     * @param settings Configuration of the worker threads
      */
-    public MessageDeliverer(int capacity) {
-        this.queue = new ArrayBlockingQueue<>(capacity);
+    public MessageDeliverer(int capacity, DeliverySettings settings) {
+        this(capacity, settings, new MessageBusMetrics());
+    }
+
+    /**
+     * Constructor for a message deliverer recording into the metrics of a message bus.
+     *
+     * @param capacity Maximal amount of messages to be cached.
+     * @param settings Configuration of the worker threads
+     * @param metrics  Metrics of the message bus
+     */
+    public MessageDeliverer(int capacity, DeliverySettings settings, MessageBusMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+        this.workers = new Worker[settings.getThreads()];
+        SpillBuffer spill = null;
+        for (int i = 0; i < workers.length; i++) {
+            if (settings.getOverflowPolicy() == DeliveryOverflowPolicy.SPILL) {
+                spill = new SpillBuffer(settings.getSpillCapacity() / workers.length);
+            }
+            int queueCapacity = Math.max(capacity / workers.length, 1);
+            DeliveryQueue queue = settings.getQueueType() == DeliveryQueueType.RING_BUFFER
+                    ? new RingBufferDeliveryQueue(queueCapacity, settings.getWaitStrategy(), metrics)
+                    : new BlockingDeliveryQueue(queueCapacity, metrics);
+            workers[i] = new Worker(queue, spill, "t-bus-deliverer-" + i, settings.getThreadingMode());
+        }
+        this.droppedMessages = new LongAdder();
         running = false;
     }
 
     /**
-     * Behaviour of the thread. Takes messages from the queue and forwards them to the application synchronously.
+     * Starts the worker threads.
      */
-    @Override
-    public void run() {
+    public void start() {
         running = true;
-        MessageDelivery delivery;
-        while (running) {
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Adds a message, which was sent by its publisher directly, to the queue of its worker for delivery.
+     * If the queue is full, the overflow policy decides what happens.
+     *
+     * @param message  Message to be delivered to the application
+     * @param handler  Handler of the message type
+     * @param senderId Identifier of the message bus, which sent and published the message
+     */
+    public void deliverMessage(Object message, MessageHandler handler, String senderId) {
+        deliverMessage(message, handler, senderId, senderId, System.nanoTime());
+    }
+
+    /**
+     * Adds a received message to the queue of its worker for delivery.
+     * If the queue is full, the overflow policy decides what happens.
+     *
+     * @param message      Message to be delivered to the application
+     * @param handler      Handler of the message type
+     * @param senderId     Identifier of the message bus, which sent the message
+     * @param publisherId  Identifier of the message bus, which published the message, or an empty string, if it is unknown
+     * @param receiveNanos Value of System.nanoTime() when the message was received, used for measuring the dispatch latency
+     */
+    public void deliverMessage(Object message, MessageHandler handler, String senderId, String publisherId, long receiveNanos) {
+        if (!running) {
+            logger.debug("Delivery was stopped. Ignored a message of type {}.", handler.getType().getSimpleName());
+            return;
+        }
+        Worker worker = workers[partition(handler.getType().getSimpleName(), publisherId == null || publisherId.isEmpty() ? senderId : publisherId)];
+        boolean queued;
+        switch (settings.getOverflowPolicy()) {
+            case BLOCK:
+                queued = worker.put(message, handler, senderId, receiveNanos);
+                break;
+            case SPILL:
+                queued = worker.offerOrSpill(message, handler, senderId, receiveNanos);
+                break;
+            case DROP:
+            default:
+                queued = worker.queue.offer(message, handler, senderId, receiveNanos);
+        }
+        if (!queued) {
+            drop(message, handler, senderId);
+        }
+    }
+
+    /**
+     * Counts a discarded message and notifies the application.
+     *
+     * @param message  The discarded message
+     * @param handler  Handler of the message type
+     * @param senderId Identifier of the message bus, which sent the message
+     */
+    private void drop(Object message, MessageHandler handler, String senderId) {
+        droppedMessages.increment();
+        Class<?> messageType = handler.getType();
+        metrics.getDropped().increment(messageType.getSimpleName(), senderId);
+        logger.debug("Delivery queue is full. Dropped a message of type {}.", messageType.getSimpleName());
+        DroppedMessageListener listener = settings.getDroppedMessageListener();
+        if (listener != null) {
             try {
-                delivery = queue.take();
-                delivery.deliver();
-            } catch (Exception e) {
-                logger.debug("Could not deliver a message.");
-                e.printStackTrace();
+                listener.messageDropped(message, messageType);
+            } catch (RuntimeException e) {
+                logger.debug("The dropped message listener threw an exception.", e);
             }
         }
     }
 
     /**
-     * Adds a message to the queue for delivery.
+     * Getter for the amount of received messages, which were discarded, because the delivery queue was full
      *
-     * @param message Message to be delivered to the application
+     * @return Amount of dropped messages since the start of the deliverer
      */
-    public void deliverMessage(Object message, MessageHandler handler) {
-        MessageDelivery delivery = new MessageDelivery(message, handler);
-        queue.offer(delivery);
+    public long getDroppedMessageCount() {
+        return droppedMessages.sum();
     }
 
+    /**
+     * Getter for the amount of messages waiting in the queues of all workers. Spilled messages are not included.
+     *
+     * @return Approximate amount of queued messages
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Chooses the worker for a message. The lanes of a message type are assigned to consecutive workers.
+     *
+     * @param messageType Simple name of the message type
+     * @param publisherId Identifier of the message bus, which published the message
+     * @return Index of the worker
+     */
+    private int partition(String messageType, String publisherId) {
+        int concurrency = settings.getConcurrency(messageType);
+        int lane = concurrency > 1 ? Math.floorMod(publisherId.hashCode(), concurrency) : 0;
+        int hash = messageType.hashCode();
+        return Math.floorMod((hash ^ (hash >>> 16)) + lane, workers.length);
+    }
+
+    /**
+     * Stops the worker threads and waits a limited time for them to end. Messages still queued or spilled are not delivered.
+     * Receiving threads waiting for room in a queue give up.
+     */
     public void stopDelivering() {
         running = false;
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+        try {
+            for (Worker worker : workers) {
+                worker.thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A worker thread with its own queue, delivering messages synchronously.
+     */
+    private class Worker implements Runnable {
+        private final DeliveryQueue queue;
+        private final SpillBuffer spill;
+        private final Thread thread;
+
+        /**
+         * Constructor for a worker.
+         *
+         * @param queue         Queue of the messages delivered by this worker
+         * @param spill         Disk buffer used, when the queue is full, or null, if messages are not spilled
+         * @param name          Name of the thread
+         * @param threadingMode Kind of thread
+         */
+        Worker(DeliveryQueue queue, SpillBuffer spill, String name, ThreadingMode threadingMode) {
+            this.queue = queue;
+            this.spill = spill;
+            this.thread = threadingMode.newThread(name, this);
+        }
+
+        /**
+         * Waits until the queue has room for the message. Gives up, when the deliverer is stopped.
+         *
+         * @param message      Message to be delivered to the application
+         * @param handler      Handler of the message type
+         * @param senderId     Identifier of the message bus, which sent the message
+         * @param receiveNanos Value of System.nanoTime() when the message was received
+         * @return The message was queued
+         */
+        boolean put(Object message, MessageHandler handler, String senderId, long receiveNanos) {
+            try {
+                while (running) {
+                    if (queue.offer(message, handler, senderId, receiveNanos, OFFER_TIMEOUT_MILLIS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * Queues the message, if the queue has room and no message was spilled before. Otherwise the message is appended to the spill buffer, so the order is kept.
+         *
+         * @param message      Message to be delivered to the application
+         * @param handler      Handler of the message type
+         * @param senderId     Identifier of the message bus, which sent the message
+         * @param receiveNanos Value of System.nanoTime() when the message was received
+         * @return The message was queued or spilled
+         */
+        boolean offerOrSpill(Object message, MessageHandler handler, String senderId, long receiveNanos) {
+            synchronized (spill) {
+                if (spill.isEmpty() && queue.offer(message, handler, senderId, receiveNanos)) {
+                    return true;
+                }
+                try {
+                    return spill.write(new MessageDelivery(message, handler, senderId, receiveNanos));
+                } catch (IOException e) {
+                    logger.debug("Could not spill a message to disk.", e);
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Delivers the next message. Queued messages are older than spilled messages, so the queue is drained first.
+         * If there is no message, the worker waits for the next one.
+         *
+         * @throws Exception when waiting was interrupted or a spilled message could not be read
+         */
+        private void deliverNext() throws Exception {
+            if (queue.deliverNext()) {
+                return;
+            }
+            if (spill != null) {
+                MessageDelivery delivery;
+                synchronized (spill) {
+                    delivery = spill.read();
+                }
+                if (delivery != null) {
+                    delivery.deliver(metrics);
+                    return;
+                }
+            }
+            queue.awaitMessage();
+        }
+
+        /**
+         * Behaviour of the thread. Takes messages from the queue and forwards them to the application synchronously.
+         */
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    deliverNext();
+                } catch (InterruptedException e) {
+                    logger.trace("Delivery worker {} was stopped.", thread.getName());
+                } catch (Exception e) {
+                    logger.debug("Could not deliver a message.", e);
+                }
+            }
+            if (spill != null) {
+                synchronized (spill) {
+                    spill.close();
+                }
+            }
+        }
     }
 }
@@ -10,6 +10,8 @@ import mf.MessageHandler;
 public class MessageDelivery<MessageType> {
     private final MessageType message;
     private final MessageHandler<MessageType> handler;
+    private final String senderId;
+    private final long receiveNanos;
 
     /**
      * Constructor for the Delivery object.
@@ -17,8 +19,21 @@ public class MessageDelivery<MessageType> {
      * @param handler The mapped function which will be used to process the message
      */
     public MessageDelivery(MessageType message, MessageHandler<MessageType> handler) {
+        this(message, handler, null, 0);
+    }
+
+    /**
+     * Constructor for the Delivery object of a received message.
+     * @param message      The message to be delivered
+     * @param handler      The mapped function which will be used to process the message
+     * @param senderId     Identifier of the neighbour, which sent the message, or null, if it is unknown
+     * @param receiveNanos Value of System.nanoTime() when the message was received or 0, if it is unknown
+     */
+    public MessageDelivery(MessageType message, MessageHandler<MessageType> handler, String senderId, long receiveNanos) {
         this.message = message;
         this.handler = handler;
+        this.senderId = senderId;
+        this.receiveNanos = receiveNanos;
     }
 
     /**
@@ -28,4 +43,43 @@ public class MessageDelivery<MessageType> {
     public void deliver() {
         handler.receiveMessage(message);
     }
+
+    /**
+     * Processes the message and records the delivery in the metrics of the message bus.
+     *
+     * @param metrics Metrics of the message bus
+     */
+    void deliver(MessageBusMetrics metrics) {
+        long startNanos = System.nanoTime();
+        deliver();
+        metrics.recordDelivery(handler.getType().getSimpleName(), senderId, receiveNanos, startNanos);
+    }
+
+    /**
+     * @return The message to be delivered
+     */
+    public MessageType getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The mapped function which will be used to process the message
+     */
+    public MessageHandler<MessageType> getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return Identifier of the neighbour, which sent the message, or null, if it is unknown
+     */
+    public String getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * @return Value of System.nanoTime() when the message was received or 0, if it is unknown
+     */
+    public long getReceiveNanos() {
+        return receiveNanos;
+    }
 }
@@ -0,0 +1,184 @@
+package utilities;
+
+import mf.MessageTrace;
+
+/**
+ * A received message, which was parsed exactly once. The envelope holds the meta data of the message package.
+ * The wrapped message itself is not parsed. Only its position inside the received bytes is remembered, so it can be bound to a java object later,
+ * if the application is interested in it, or written unchanged to outgoing connections, if the message is forwarded.
+ * The received bytes must therefore not be modified after parsing.
+ * The envelope also remembers the codec it was decoded by, since forwarding and binding the wrapped message depend on the format.
+ *
+ * @author Tobias Haider
+ * @see MessageCodec
+ */
+public class MessageEnvelope {
+    private final MessageCodec codec;
+    private final String messageId;
+    private final String senderId;
+    private final String publisherId;
+    private final String receiverId;
+    private final String messageType;
+    private final int timeToLive;
+    private final byte[] data;
+    private final int payloadOffset;
+    private final int payloadLength;
+    private final int[] unknownFields;
+    private final MessageTrace trace;
+    private final String replyTo;
+    private final String correlationId;
+
+    /**
+     * Constructor for a MessageEnvelope
+     *
+     * @param codec         Codec, which decoded the received bytes
+     * @param messageId     Unique identifier of the message package
+     * @param senderId      Unique identifier of the sender
+     * @param publisherId   Unique identifier of the message bus, which published the message, or an empty string, if it is unknown
+     * @param receiverId    Unique identifier of the receiver
+     * @param messageType   SimpleString representation of the message type
+     * @param timeToLive    Amount of hops the package is allowed to make
+     * @param data          Received bytes of the whole message package
+     * @param payloadOffset Position of the wrapped message inside the received bytes
+     * @param payloadLength Length of the wrapped message in bytes
+     * @param unknownFields Start and end positions of fields not known to this version of the framework or null, if there are none
+     */
+    public MessageEnvelope(MessageCodec codec, String messageId, String senderId, String publisherId, String receiverId, String messageType, int timeToLive,
+                           byte[] data, int payloadOffset, int payloadLength, int[] unknownFields) {
+        this(codec, messageId, senderId, publisherId, receiverId, messageType, timeToLive, data, payloadOffset, payloadLength, unknownFields, null, null, null);
+    }
+
+    /**
+     * Constructor for a MessageEnvelope of a message, which may be traced or be part of a request and reply
+     *
+     * @param codec         Codec, which decoded the received bytes
+     * @param messageId     Unique identifier of the message package
+     * @param senderId      Unique identifier of the sender
+     * @param publisherId   Unique identifier of the message bus, which published the message, or an empty string, if it is unknown
+     * @param receiverId    Unique identifier of the receiver
+     * @param messageType   SimpleString representation of the message type
+     * @param timeToLive    Amount of hops the package is allowed to make
+     * @param data          Received bytes of the whole message package
+     * @param payloadOffset Position of the wrapped message inside the received bytes
+     * @param payloadLength Length of the wrapped message in bytes
+     * @param unknownFields Start and end positions of fields not known to this version of the framework or null, if there are none
+     * @param trace         Trace of the message or null, if the message is not traced
+     * @param replyTo       Unique identifier of the message bus expecting a reply or null, if the message is not a request
+     * @param correlationId Message id of the answered request or null, if the message is not a reply
+     */
+    public MessageEnvelope(MessageCodec codec, String messageId, String senderId, String publisherId, String receiverId, String messageType, int timeToLive,
+                           byte[] data, int payloadOffset, int payloadLength, int[] unknownFields, MessageTrace trace, String replyTo, String correlationId) {
+        this.trace = trace;
+        this.replyTo = replyTo;
+        this.correlationId = correlationId;
+        this.codec = codec;
+        this.messageId = messageId;
+        this.senderId = senderId;
+        this.publisherId = publisherId;
+        this.receiverId = receiverId;
+        this.messageType = messageType;
+        this.timeToLive = timeToLive;
+        this.data = data;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+        this.unknownFields = unknownFields;
+    }
+
+    /**
+     * @return Codec, which decoded the received bytes
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return Unique identifier of the message package
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return Unique identifier of the sender
+     */
+    public String getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * @return Unique identifier of the message bus, which published the message, or an empty string, if the publisher uses an older version of the framework
+     */
+    public String getPublisherId() {
+        return publisherId;
+    }
+
+    /**
+     * @return Unique identifier of the receiver
+     */
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    /**
+     * @return messageType SimpleString representation of the message type
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return timeToLive Amount of hops the package is allowed to make
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @return Received bytes of the whole message package
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return Position of the wrapped message inside the received bytes
+     */
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    /**
+     * @return Length of the wrapped message in bytes
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @return Start and end positions of unknown fields, which are passed on unchanged when forwarding, or null
+     */
+    public int[] getUnknownFields() {
+        return unknownFields;
+    }
+
+    /**
+     * @return Trace of the message up to the last relay or null, if the message is not traced
+     */
+    public MessageTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return Unique identifier of the message bus expecting a reply or null, if the message is not a request
+     */
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    /**
+     * @return Message id of the answered request or null, if the message is not a reply
+     */
+    public String getCorrelationId() {
+        return correlationId;
+    }
+}
@@ -3,19 +3,25 @@ package utilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Comparator;
-import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
 
 /**
  * A class keeping track of received messages.
+ * Message ids are stored as their numeric origin and sequence number in open-addressed primitive tables, so storing and looking up ids allocates nothing.
+ * <p>
+ * The message ids are stored in two generations. New ids are added to the current generation. Once it is full, it becomes the previous generation
+ * and the former previous generation is cleared and reused as the new current generation, so the oldest message ids are forgotten without sorting or scanning the stored ids.
+ * Depending on the time of the last rotation, between half and all of the capacity is remembered.
+ * Large storages are split into stripes with their own generations and locks, so concurrent receivers rarely wait for each other.
  *
  * @author Tobias Haider
+ * @see MessageIds
  */
 public class MessageIdStorage {
-    private final ConcurrentHashMap<String, Date> receivedMessages;
-    private final int capacity;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_CAPACITY = 4096;
+
+    private final Stripe[] stripes;
 
     private static Logger logger = LoggerFactory.getLogger(MessageIdStorage.class);
 
@@ -25,32 +31,50 @@ public class MessageIdStorage {
      * @param capacity Amount of message ids to keep track of
      */
     public MessageIdStorage(int capacity) {
-        this.receivedMessages = new ConcurrentHashMap<>(capacity);
-        this.capacity = capacity;
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && capacity / (stripeCount * 2) >= MIN_STRIPE_CAPACITY) {
+            stripeCount *= 2;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(Math.max(capacity / stripeCount / 2, 1));
+        }
     }
 
     /**
-     * Internal method deleting the oldest message ids, in order to not overload the storage.
+     * Add new message id to be kept track off. Forgets the oldest message ids, if the current generation is full.
+     *
+     * @param origin   Numeric origin of the message id
+     * @param sequence Sequence number of the message id
+     * @return The message id was not stored before. If false, the message was already received previously.
      */
-    private void deleteMessages() {
-        final int size = receivedMessages.size();
-        receivedMessages.entrySet().stream().sorted(Comparator.comparing(Map.Entry::getValue)).limit(size / 3).map(Map.Entry::getKey).forEach(receivedMessages::remove);
-        logger.trace("Deleted " + (size - receivedMessages.size()) + " or more messages");
+    public boolean add(int origin, long sequence) {
+        long hash = hash(origin, sequence);
+        return stripes[(int) (hash >>> 32) & (stripes.length - 1)].add(origin, sequence, (int) hash);
     }
 
-
     /**
-     * Add new message id to be kept track off. Delete oldest message, if storage is close to full.
+     * Add new message id to be kept track off. Forgets the oldest message ids, if the current generation is full.
      *
      * @param messageId Id of a received message
+     * @return The message id was not stored before. If false, the message was already received previously.
+     * @see MessageIds
      */
-    public void add(String messageId) {
-        logger.trace("Added messageId " + messageId + " to the storage.");
-        if (receivedMessages.size() >= capacity) {
-            logger.trace("Storage is approaching limit. Deleting some message ids.");
-            deleteMessages();
-        }
-        receivedMessages.put(messageId, new Date());
+    public boolean add(String messageId) {
+        logger.trace("Adding messageId {} to the storage.", messageId);
+        return add(MessageIds.origin(messageId), MessageIds.sequence(messageId));
+    }
+
+    /**
+     * Ask the storage whether a certain message was already received previously.
+     *
+     * @param origin   Numeric origin of the message id
+     * @param sequence Sequence number of the message id
+     * @return The message bus already received this message.
+     */
+    public boolean contains(int origin, long sequence) {
+        long hash = hash(origin, sequence);
+        return stripes[(int) (hash >>> 32) & (stripes.length - 1)].contains(origin, sequence, (int) hash);
     }
 
     /**
@@ -60,7 +84,134 @@ public class MessageIdStorage {
      * @return The message bus already received this message.
      */
     public boolean contains(String messageId) {
-        logger.trace("Contains " + messageId + " " + receivedMessages.containsKey(messageId));
-        return receivedMessages.containsKey(messageId);
+        return contains(MessageIds.origin(messageId), MessageIds.sequence(messageId));
+    }
+
+    /**
+     * Getter for the amount of stored message ids. Includes the ids of the previous generation, which are forgotten next.
+     *
+     * @return Amount of message ids currently kept track of
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Mixes origin and sequence number, so consecutive sequence numbers are spread over the whole table.
+     */
+    private static long hash(int origin, long sequence) {
+        long hash = (sequence ^ ((long) origin << 32 | origin & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * A part of the storage with its own generations, guarded by its own lock.
+     */
+    private static class Stripe {
+        private final int generationCapacity;
+        private Generation current;
+        private Generation previous;
+
+        Stripe(int generationCapacity) {
+            this.generationCapacity = generationCapacity;
+            this.current = new Generation(generationCapacity);
+            this.previous = new Generation(generationCapacity);
+        }
+
+        synchronized boolean add(int origin, long sequence, int hash) {
+            if (current.contains(origin, sequence, hash) || previous.contains(origin, sequence, hash)) {
+                return false;
+            }
+            if (current.size >= generationCapacity) {
+                Generation oldest = previous;
+                previous = current;
+                current = oldest;
+                current.clear();
+                logger.trace("Storage reached its limit. Forgot the oldest generation of message ids.");
+            }
+            current.insert(origin, sequence, hash);
+            return true;
+        }
+
+        synchronized boolean contains(int origin, long sequence, int hash) {
+            return current.contains(origin, sequence, hash) || previous.contains(origin, sequence, hash);
+        }
+
+        synchronized int size() {
+            return current.size + previous.size;
+        }
+    }
+
+    /**
+     * An open-addressed hash set of message ids with linear probing. Empty slots hold a reserved sequence number instead of a separate flag,
+     * and the table is at most three quarters full, so a generation needs 16 bytes per message id and probe sequences stay short.
+     * The table size is not rounded to a power of two, so the slots are picked by multiplying the hash with the table size.
+     */
+    private static class Generation {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private final int[] origins;
+        private final long[] sequences;
+        private int size;
+        /**
+         * Message ids with the reserved sequence number are not stored in the table
+         */
+        private boolean emptyUsed;
+        private int emptyOrigin;
+
+        Generation(int capacity) {
+            int tableSize = (int) Math.min((long) capacity * 4 / 3 + 1, Integer.MAX_VALUE - 8);
+            this.origins = new int[tableSize];
+            this.sequences = new long[tableSize];
+            Arrays.fill(sequences, EMPTY);
+        }
+
+        boolean contains(int origin, long sequence, int hash) {
+            if (sequence == EMPTY) {
+                return emptyUsed && emptyOrigin == origin;
+            }
+            for (int slot = slot(hash); sequences[slot] != EMPTY; slot = next(slot)) {
+                if (sequences[slot] == sequence && origins[slot] == origin) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void insert(int origin, long sequence, int hash) {
+            if (sequence == EMPTY) {
+                // A single message id with the reserved sequence number is remembered per generation
+                emptyUsed = true;
+                emptyOrigin = origin;
+            } else {
+                int slot = slot(hash);
+                while (sequences[slot] != EMPTY) {
+                    slot = next(slot);
+                }
+                origins[slot] = origin;
+                sequences[slot] = sequence;
+            }
+            size++;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(sequences, EMPTY);
+                emptyUsed = false;
+                size = 0;
+            }
+        }
+
+        private int slot(int hash) {
+            return (int) (((hash & 0xFFFFFFFFL) * sequences.length) >>> 32);
+        }
+
+        private int next(int slot) {
+            return slot + 1 < sequences.length ? slot + 1 : 0;
+        }
     }
-}
\ No newline at end of file
+}
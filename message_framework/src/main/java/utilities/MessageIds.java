@@ -0,0 +1,214 @@
+package utilities;
+
+/**
+ * The MessageIds class is a pure utility class defining the compact message id scheme.
+ * A message id consists of a numeric origin identifying the publishing message bus and a 64 bit sequence number counted by this message bus.
+ * On the wire, message ids are written as "origin:sequence", so they stay readable for peers treating message ids as plain strings.
+ * <p>
+ * Message ids of older framework versions have the form "identifier:counter". They are mapped to the same scheme: a non-numeric origin is replaced by
+ * a 64 bit FNV-1a hash folded to 32 bits and a non-numeric sequence by a 64 bit hash. The default origin of a message bus is the same hash of its identifier,
+ * so both forms of message ids published by the same message bus are equal. Unlike {@link String#hashCode()}, the hash has no trivial collisions
+ * of short identifiers like "Aa" and "BB". Two message buses sharing an origin would still discard each other's messages as duplicates,
+ * so origins can be set explicitly, where the identifiers are not known in advance.
+ *
+ * @author Tobias Haider
+ * @see MessageIdStorage
+ */
+public final class MessageIds {
+    private static final char SEPARATOR = ':';
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private MessageIds() {
+    }
+
+    /**
+     * Default origin of a message bus
+     *
+     * @param identifier Unique identifier of the message bus
+     * @return Numeric origin used in the message ids of the message bus
+     */
+    public static int defaultOrigin(String identifier) {
+        return hashOrigin(identifier, 0, identifier.length());
+    }
+
+    /**
+     * Creates the wire representation of a message id.
+     *
+     * @param origin   Numeric origin of the publishing message bus
+     * @param sequence Sequence number of the message
+     * @return The message id as "origin:sequence"
+     */
+    public static String format(int origin, long sequence) {
+        return Integer.toString(origin) + SEPARATOR + sequence;
+    }
+
+    /**
+     * Extracts the numeric origin of a message id without allocating objects.
+     *
+     * @param messageId Message id in any supported form
+     * @return Numeric origin of the message id
+     */
+    public static int origin(String messageId) {
+        int separator = messageId.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return 0;
+        }
+        long number = parseNumber(messageId, 0, separator);
+        if (number != Long.MIN_VALUE && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+            return (int) number;
+        }
+        return hashOrigin(messageId, 0, separator);
+    }
+
+    /**
+     * Extracts the sequence number of a message id without allocating objects.
+     *
+     * @param messageId Message id in any supported form
+     * @return Sequence number of the message id
+     */
+    public static long sequence(String messageId) {
+        int start = messageId.lastIndexOf(SEPARATOR) + 1;
+        long number = parseNumber(messageId, start, messageId.length());
+        if (number != Long.MIN_VALUE) {
+            return number;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = start; i < messageId.length(); i++) {
+            hash = (hash ^ messageId.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Extracts the numeric origin of a message id inside received bytes. The result equals the origin of the same message id as string.
+     *
+     * @param data   Buffer containing the message id as ASCII text
+     * @param offset Position of the message id
+     * @param length Length of the message id
+     * @return Numeric origin of the message id
+     */
+    public static int origin(byte[] data, int offset, int length) {
+        int separator = lastSeparator(data, offset, length);
+        if (separator < 0) {
+            return 0;
+        }
+        long number = parseNumber(data, offset, separator);
+        if (number != Long.MIN_VALUE && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+            return (int) number;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = offset; i < separator; i++) {
+            hash = (hash ^ data[i]) * FNV_PRIME;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Extracts the sequence number of a message id inside received bytes. The result equals the sequence number of the same message id as string.
+     *
+     * @param data   Buffer containing the message id as ASCII text
+     * @param offset Position of the message id
+     * @param length Length of the message id
+     * @return Sequence number of the message id
+     */
+    public static long sequence(byte[] data, int offset, int length) {
+        int separator = lastSeparator(data, offset, length);
+        int start = separator < 0 ? offset : separator + 1;
+        long number = parseNumber(data, start, offset + length);
+        if (number != Long.MIN_VALUE) {
+            return number;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = start; i < offset + length; i++) {
+            hash = (hash ^ data[i]) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Checks, whether a range of bytes is ASCII text. Only then the byte based functions match the string based functions.
+     *
+     * @param data   Buffer
+     * @param offset Position of the range
+     * @param length Length of the range
+     * @return All bytes are ASCII characters
+     */
+    public static boolean isAscii(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a non-numeric origin. The byte based function computes the same value for ASCII text.
+     *
+     * @return 64 bit FNV-1a hash of the range folded to 32 bits
+     */
+    private static int hashOrigin(String text, int start, int end) {
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return Position of the last separator inside a range of bytes or -1, if there is none
+     */
+    private static int lastSeparator(byte[] data, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            if (data[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a decimal number inside a range of bytes.
+     *
+     * @return The parsed number or Long.MIN_VALUE, if the range is not a decimal number fitting into a long
+     */
+    private static long parseNumber(byte[] data, int start, int end) {
+        boolean negative = start < end && data[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long number = 0;
+        for (; i < end; i++) {
+            byte b = data[i];
+            if (b < '0' || b > '9') {
+                return Long.MIN_VALUE;
+            }
+            number = number * 10 + (b - '0');
+        }
+        return negative ? -number : number;
+    }
+
+    /**
+     * Parses a decimal number inside a string.
+     *
+     * @return The parsed number or Long.MIN_VALUE, if the range is not a decimal number fitting into a long
+     */
+    private static long parseNumber(String text, int start, int end) {
+        boolean negative = start < end && text.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long number = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return negative ? -number : number;
+    }
+}
@@ -0,0 +1,132 @@
+package utilities;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binds the metrics of a message bus to a Micrometer registry. Micrometer is an optional dependency. It is only needed, if this class is used.
+ * <p>
+ * Counters are registered as function counters named "tbus.messages" with the tag "event" and, for every message type and peer,
+ * as "tbus.messages.type" and "tbus.messages.peer" with the additional tag "type" or "peer". New message types and peers are registered,
+ * when they are counted for the first time. The amount of message types and peers is limited by the counters, so the amount of meters stays bounded.
+ * Queue depths are registered as gauges and latencies as gauges of selected percentiles in seconds.
+ * The percentiles are computed from the latencies recorded during the last reporting interval, so they follow changes of the latency
+ * instead of converging to the percentiles since the start.
+ *
+ * @author Tobias Haider
+ * @see MessageBusMetrics
+ */
+public class MicrometerMetricsBinder implements MeterBinder {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+    /**
+     * Default reporting interval, which matches the default step of the Micrometer registries
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 60_000;
+
+    private final MessageBusMetrics metrics;
+    private final Tags tags;
+    private final long intervalMillis;
+
+    /**
+     * Constructor for a binder reporting the latencies of the default interval.
+     *
+     * @param metrics Metrics of a message bus
+     * @param tags    Tags added to all meters, for example the identifier of the message bus
+     */
+    public MicrometerMetricsBinder(MessageBusMetrics metrics, Iterable<Tag> tags) {
+        this(metrics, tags, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructor for a binder.
+     *
+     * @param metrics        Metrics of a message bus
+     * @param tags           Tags added to all meters, for example the identifier of the message bus
+     * @param intervalMillis Interval in milliseconds, whose latencies are reported. Should match the step of the registry.
+     */
+    public MicrometerMetricsBinder(MessageBusMetrics metrics, Iterable<Tag> tags, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("The reporting interval has to be positive.");
+        }
+        this.metrics = metrics;
+        this.tags = Tags.of(tags);
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (MessageCounter counter : metrics.counters()) {
+            Tags eventTags = tags.and("event", counter.getName());
+            FunctionCounter.builder("tbus.messages", counter, MessageCounter::getCount).tags(eventTags).register(registry);
+            counter.setKeyListener((dimension, key, adder) ->
+                    FunctionCounter.builder("tbus.messages." + dimension, adder, LongAdder::sum).tags(eventTags.and(dimension, key)).register(registry));
+        }
+        Gauge.builder("tbus.queue.delivery", metrics, MessageBusMetrics::getDeliveryQueueDepth).tags(tags).register(registry);
+        Gauge.builder("tbus.queue.outbound", metrics, m -> m.getOutboundQueueDepths().values().stream().mapToInt(Integer::intValue).sum())
+                .tags(tags).register(registry);
+        Gauge.builder("tbus.dedup.ids", metrics, MessageBusMetrics::getMessageIdCount).tags(tags).register(registry);
+        bindLatency(registry, "tbus.latency.send", metrics.sendHistogram());
+        bindLatency(registry, "tbus.latency.parse", metrics.parseHistogram());
+        bindLatency(registry, "tbus.latency.dispatch", metrics.dispatchHistogram());
+        bindLatency(registry, "tbus.latency.queue", metrics.queueHistogram());
+        bindLatency(registry, "tbus.latency.handler", metrics.handlerHistogram());
+        bindLatency(registry, "tbus.latency.forward", metrics.forwardHistogram());
+        bindLatency(registry, "tbus.latency.transit", metrics.transitHistogram());
+    }
+
+    private void bindLatency(MeterRegistry registry, String name, LatencyHistogram histogram) {
+        LatencyWindow window = new LatencyWindow(histogram.newInterval(), intervalMillis);
+        for (double percentile : PERCENTILES) {
+            Gauge.builder(name, window, w -> w.valueAtPercentile(percentile) / NANOS_PER_SECOND)
+                    .tags(tags.and("percentile", String.valueOf(percentile / 100))).baseUnit("seconds").register(registry);
+        }
+    }
+
+    /**
+     * Registers a gauge for the depth of the outbound queue of every peer. Gauges of peers added later are registered, when their connection is added.
+     *
+     * @param registry Registry the gauges are registered with
+     */
+    public void bindOutboundQueues(MeterRegistry registry) {
+        metrics.setOutboundPeerListener(peer ->
+                Gauge.builder("tbus.queue.outbound.peer", metrics, m -> depth(m.getOutboundQueueDepths(), peer)).tags(tags.and("peer", peer)).register(registry));
+    }
+
+    private static double depth(Map<String, Integer> depths, String peer) {
+        Integer depth = depths.get(peer);
+        return depth != null ? depth : 0;
+    }
+
+    /**
+     * Latencies of the last completed reporting interval. All percentile gauges of a latency read the same interval.
+     */
+    private static final class LatencyWindow {
+        private final LatencyHistogram.Interval interval;
+        private final long intervalMillis;
+        private Histogram values;
+        private long nextRotation;
+
+        LatencyWindow(LatencyHistogram.Interval interval, long intervalMillis) {
+            this.interval = interval;
+            this.intervalMillis = intervalMillis;
+        }
+
+        synchronized double valueAtPercentile(double percentile) {
+            long now = System.currentTimeMillis();
+            if (values == null || now >= nextRotation) {
+                values = interval.next();
+                nextRotation = now + intervalMillis;
+            }
+            return values.getValueAtPercentile(percentile);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package utilities;
+
+import mf.MessageHandler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free delivery queue for many producing receiver threads and a single consuming worker.
+ * The queue is a ring of preallocated slots. Producers claim a sequence number with a compare-and-set, fill the slot of the sequence number
+ * and publish it by storing the sequence number in the slot's entry of the published array. The worker delivers the slots in sequence order
+ * and releases them by advancing its own sequence number. Slots are reused, so no objects are created per message.
+ *
+ * @author Tobias Haider
+ * @see DeliveryQueueType#RING_BUFFER
+ * @see WaitStrategy
+ */
+class RingBufferDeliveryQueue implements DeliveryQueue {
+    private static final long PARK_NANOS = 1_000_000;
+    private static final long OFFER_RETRY_NANOS = 10_000;
+
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final MessageBusMetrics metrics;
+    private final AtomicLong claimed;
+    private volatile long consumed;
+    private volatile boolean consumerParked;
+    private volatile Thread consumer;
+
+    /**
+     * Constructor for an empty ring buffer.
+     *
+     * @param capacity     Minimal amount of slots. Rounded up to a power of two.
+     * @param waitStrategy How the worker waits for messages
+     * @param metrics      Metrics recording the delivered messages
+     */
+    RingBufferDeliveryQueue(int capacity, WaitStrategy waitStrategy, MessageBusMetrics metrics) {
+        int size = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1));
+        this.slots = new Slot[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.metrics = metrics;
+        this.claimed = new AtomicLong();
+    }
+
+    @Override
+    public boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        Slot slot = slots[index];
+        slot.message = message;
+        slot.handler = handler;
+        slot.senderId = senderId;
+        slot.receiveNanos = receiveNanos;
+        published.set(index, sequence);
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(Object message, MessageHandler handler, String senderId, long receiveNanos, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (!offer(message, handler, senderId, receiveNanos)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(OFFER_RETRY_NANOS);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean deliverNext() {
+        long sequence = consumed;
+        int index = (int) sequence & mask;
+        if (published.get(index) != sequence) {
+            return false;
+        }
+        Slot slot = slots[index];
+        Object message = slot.message;
+        MessageHandler handler = slot.handler;
+        String senderId = slot.senderId;
+        long receiveNanos = slot.receiveNanos;
+        slot.message = null;
+        slot.handler = null;
+        slot.senderId = null;
+        // Releases the slot for the producers
+        consumed = sequence + 1;
+        long startNanos = System.nanoTime();
+        handler.receiveMessage(message);
+        metrics.recordDelivery(handler.getType().getSimpleName(), senderId, receiveNanos, startNanos);
+        return true;
+    }
+
+    @Override
+    public void awaitMessage() throws InterruptedException {
+        long sequence = consumed;
+        int index = (int) sequence & mask;
+        while (published.get(index) != sequence) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case PARK:
+                default:
+                    consumer = Thread.currentThread();
+                    consumerParked = true;
+                    // Check again, since a producer might have published before noticing the parked flag
+                    if (published.get(index) != sequence) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    consumerParked = false;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(claimed.get() - consumed, 0);
+    }
+
+    /**
+     * A reusable slot of the ring buffer.
+     */
+    private static class Slot {
+        private Object message;
+        private MessageHandler handler;
+        private String senderId;
+        private long receiveNanos;
+    }
+}
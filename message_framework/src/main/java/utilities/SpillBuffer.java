@@ -0,0 +1,122 @@
+package utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mf.MessageHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+
+/**
+ * A bounded first in, first out buffer on disk holding messages, which do not fit into the delivery queue of a worker.
+ * Messages are written as json records consisting of the sender, the receive time, a length and the bytes of the message. Only the handlers of the messages are kept in memory.
+ * The file is created on the first spilled message and truncated every time the buffer was drained completely.
+ * <p>
+ * This class is not thread safe. The owning worker synchronizes all accesses.
+ *
+ * @author Tobias Haider
+ * @see DeliveryOverflowPolicy#SPILL
+ */
+class SpillBuffer {
+    private final long capacity;
+    private final ObjectMapper objectMapper;
+    private final ArrayDeque<MessageHandler> handlers;
+    private File path;
+    private RandomAccessFile file;
+    private long readPosition;
+    private long writePosition;
+    private boolean closed;
+
+    private static Logger logger = LoggerFactory.getLogger(SpillBuffer.class);
+
+    /**
+     * Constructor for an empty spill buffer.
+     *
+     * @param capacity Maximal size of the file in bytes
+     */
+    SpillBuffer(long capacity) {
+        this.capacity = capacity;
+        this.objectMapper = new ObjectMapper();
+        this.handlers = new ArrayDeque<>();
+    }
+
+    /**
+     * @return No spilled message is waiting for delivery
+     */
+    boolean isEmpty() {
+        return handlers.isEmpty();
+    }
+
+    /**
+     * Appends a message to the buffer.
+     *
+     * @param delivery Message and its handler
+     * @return The message was spilled. If false, the buffer is full or closed.
+     * @throws IOException when the message could not be written to disk
+     */
+    boolean write(MessageDelivery delivery) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(delivery.getMessage());
+        String senderId = delivery.getSenderId() != null ? delivery.getSenderId() : "";
+        if (closed || writePosition + senderId.length() * 3 + Short.BYTES + Long.BYTES + Integer.BYTES + bytes.length > capacity) {
+            return false;
+        }
+        if (file == null) {
+            path = File.createTempFile("t-bus-spill-", ".bin");
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+        }
+        file.seek(writePosition);
+        file.writeUTF(senderId);
+        file.writeLong(delivery.getReceiveNanos());
+        file.writeInt(bytes.length);
+        file.write(bytes);
+        writePosition = file.getFilePointer();
+        handlers.add(delivery.getHandler());
+        return true;
+    }
+
+    /**
+     * Removes the oldest message from the buffer.
+     *
+     * @return The oldest spilled message or null, if the buffer is empty
+     * @throws IOException when the message could not be read from disk or does not match its handler any more
+     */
+    MessageDelivery read() throws IOException {
+        MessageHandler handler = handlers.poll();
+        if (handler == null) {
+            return null;
+        }
+        file.seek(readPosition);
+        String senderId = file.readUTF();
+        long receiveNanos = file.readLong();
+        byte[] bytes = new byte[file.readInt()];
+        file.readFully(bytes);
+        readPosition = file.getFilePointer();
+        if (handlers.isEmpty()) {
+            readPosition = 0;
+            writePosition = 0;
+            file.setLength(0);
+        }
+        return new MessageDelivery(objectMapper.readValue(bytes, handler.getType()), handler, senderId.isEmpty() ? null : senderId, receiveNanos);
+    }
+
+    /**
+     * Discards all spilled messages and deletes the file.
+     */
+    void close() {
+        closed = true;
+        handlers.clear();
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.trace("There occurred an error while closing the spill file.", e);
+            }
+            path.delete();
+            file = null;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package utilities;
 
 import mf.MessageHandler;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -68,4 +70,13 @@ public class SubscriptionService {
     public boolean contains(String messageType) {
         return subscriptions.containsKey(messageType);
     }
+
+    /**
+     * Get the simple names of all subscribed message types.
+     *
+     * @return Copy of the subscribed message types
+     */
+    public Set<String> getMessageTypes() {
+        return new HashSet<>(subscriptions.keySet());
+    }
 }
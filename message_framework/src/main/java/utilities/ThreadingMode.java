@@ -0,0 +1,120 @@
+package utilities;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ThreadingMode enum defines, which kind of threads handle incoming connections and deliver messages to the application.
+ * Virtual threads are only available on Java 21 or newer. They are created reflectively, so the framework still runs on older Java versions in platform mode.
+ *
+ * @author Tobias Haider
+ * @see MessageDeliverer
+ */
+public enum ThreadingMode {
+    /**
+     * Every connection handler and delivery worker is an operating system thread
+     */
+    PLATFORM {
+        @Override
+        public Thread newThread(String name, Runnable task) {
+            return new Thread(task, name);
+        }
+
+        @Override
+        public ExecutorService newPerTaskExecutor() {
+            return Executors.newCachedThreadPool();
+        }
+    },
+    /**
+     * Every connection handler and delivery worker is a virtual thread, so blocking reads and blocking handlers do not tie up operating system threads
+     */
+    VIRTUAL {
+        @Override
+        public Thread newThread(String name, Runnable task) {
+            requireVirtualThreads();
+            try {
+                Object builder = VirtualThreads.OF_VIRTUAL.invoke(null);
+                builder = VirtualThreads.NAME.invoke(builder, name);
+                return (Thread) VirtualThreads.UNSTARTED.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create a virtual thread.", e);
+            }
+        }
+
+        @Override
+        public ExecutorService newPerTaskExecutor() {
+            requireVirtualThreads();
+            try {
+                return (ExecutorService) VirtualThreads.NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create a virtual thread executor.", e);
+            }
+        }
+    };
+
+    /**
+     * Creates a thread, which has not been started yet.
+     *
+     * @param name Name of the thread
+     * @param task Task run by the thread
+     * @return The unstarted thread
+     */
+    public abstract Thread newThread(String name, Runnable task);
+
+    /**
+     * Creates an executor running every submitted task on its own thread. Platform threads are reused, virtual threads are not.
+     *
+     * @return The executor
+     */
+    public abstract ExecutorService newPerTaskExecutor();
+
+    /**
+     * @return The running Java version supports virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        return VirtualThreads.OF_VIRTUAL != null;
+    }
+
+    /**
+     * @throws UnsupportedOperationException when the running Java version does not support virtual threads
+     */
+    private static void requireVirtualThreads() {
+        if (!virtualThreadsSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+        }
+    }
+
+    /**
+     * Lazily looked up methods of the virtual thread API. All methods are null, if the API is not available.
+     * The API also exists as a disabled preview on Java 19 and 20, so a virtual thread is built without starting it to find out whether it can be used.
+     */
+    private static class VirtualThreads {
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method UNSTARTED;
+        private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method unstarted = null;
+            Method newExecutor = null;
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+                newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                unstarted.invoke(ofVirtual.invoke(null), (Runnable) () -> {
+                });
+            } catch (Throwable e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            UNSTARTED = unstarted;
+            NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The TimeoutWheel runs tasks after a timeout with a hashed timing wheel. Scheduling and cancelling a timeout only adds it to a queue,
+ * so both are cheap regardless of the amount of pending timeouts. A single thread advances the wheel by one bucket every tick
+ * and runs the tasks of the expired timeouts in the bucket. Timeouts, which are further away than one turn of the wheel, wait for their remaining turns.
+ * <p>
+ * Timeouts expire up to one tick late. The thread is started with the first scheduled timeout, so a wheel, which is never used, costs no thread.
+ * Tasks run on the thread of the wheel and should return quickly.
+ *
+ * @author Tobias Haider
+ */
+public class TimeoutWheel {
+    /**
+     * Maximum amount of scheduled timeouts moved into the wheel per tick, so a burst of timeouts does not delay expiring ones
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Queue<Timeout> scheduled;
+    private final Queue<Timeout> cancelled;
+    private final AtomicBoolean started;
+    private final AtomicInteger pending;
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile Thread thread;
+
+    private static Logger logger = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    /**
+     * Constructor for a TimeoutWheel
+     *
+     * @param name          Name of the thread advancing the wheel
+     * @param tickMillis    Duration of one tick in milliseconds, which is the accuracy of the timeouts
+     * @param ticksPerWheel Amount of buckets of the wheel, rounded up to a power of two
+     */
+    public TimeoutWheel(String name, long tickMillis, int ticksPerWheel) {
+        if (tickMillis <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("The tick duration and the amount of ticks have to be positive.");
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        this.buckets = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = buckets.length - 1;
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.started = new AtomicBoolean(false);
+        this.pending = new AtomicInteger();
+        this.running = true;
+    }
+
+    /**
+     * Schedules a task, which is run once after the given delay, unless its timeout is cancelled before.
+     *
+     * @param task        Task run on the thread of the wheel
+     * @param delayMillis Delay in milliseconds
+     * @return The timeout, which can be cancelled
+     * @throws IllegalStateException when the wheel was stopped
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (!running) {
+            throw new IllegalStateException("The timeout wheel was stopped.");
+        }
+        start();
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0)));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return Amount of timeouts, which neither expired nor were cancelled
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the thread of the wheel. Pending timeouts do not expire anymore.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Starts the thread of the wheel, if it was not started yet.
+     */
+    private void start() {
+        if (!started.get()) {
+            synchronized (this) {
+                if (!started.get()) {
+                    startNanos = System.nanoTime();
+                    thread = new Thread(this::run, name);
+                    thread.setDaemon(true);
+                    thread.start();
+                    started.set(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one bucket every tick.
+     */
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos;
+            while (running && (sleepNanos = deadline - (System.nanoTime() - startNanos)) > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+            }
+            if (!running) {
+                return;
+            }
+            removeCancelled();
+            transferScheduled(tick);
+            buckets[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into the buckets, in which they expire.
+     */
+    private void transferScheduled(long tick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long expiryTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+            // Timeouts, which should already have expired, expire with the current tick
+            buckets[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task. Its state changes exactly once from pending to either cancelled or expired.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimeoutWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Only accessed by the thread of the wheel
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimeoutWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(PENDING);
+        }
+
+        /**
+         * Cancels the timeout, so its task is not run.
+         *
+         * @return The timeout was cancelled. False, if it already expired or was cancelled before.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return The timeout was cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return The task of the timeout was run
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            wheel.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.warn("A timeout task failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts expiring with a tick of the wheel. Only accessed by the thread of the wheel.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+            }
+            tail = timeout;
+        }
+
+        /**
+         * Expires all timeouts with a deadline up to the given one and counts down the rounds of the others.
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package utilities;
+
+/**
+ * Defines how a delivery worker waits for messages on a ring buffer. The strategies trade CPU time for latency.
+ *
+ * @author Tobias Haider
+ * @see DeliveryQueueType#RING_BUFFER
+ */
+public enum WaitStrategy {
+    /**
+     * The worker checks for new messages in a tight loop. Lowest latency, but every worker occupies a CPU core.
+     */
+    BUSY_SPIN,
+    /**
+     * The worker yields its CPU core between checks for new messages.
+     */
+    YIELD,
+    /**
+     * The worker is parked and woken up by the next receiving thread. Lowest CPU usage, but waking up a worker adds latency.
+     */
+    PARK
+}
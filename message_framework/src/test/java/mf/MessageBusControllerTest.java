@@ -4,11 +4,24 @@ import message_types.TestMessage;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import utilities.BinaryMessageCodec;
+import utilities.JsonMessageCodec;
+import utilities.MessageBusMetrics;
+import network.BroadcastMode;
+import network.ReceiverType;
 
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.any;
@@ -129,4 +142,356 @@ public class MessageBusControllerTest {
         // Verify that all messages have been received
         verify(handler, timeout(4000).times(100)).receiveMessage(any(TestMessage.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPersistentConnections() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setPersistentConnections(true);
+        factory.setConnectionsPerPeer(2);
+
+        // Set up sender
+        factory.setServerPort(3501);
+        factory.setIdentifier("mb1");
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 3502);
+
+        // Set up receiver
+        factory.setServerPort(3502);
+        factory.setIdentifier("mb2");
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb2 = factory.create();
+        mb2.addMessageResponse(handler);
+
+        // Send a lot of messages over the same connections
+        TestMessage message = new TestMessage("Hi");
+        for (int i = 0; i < 100; i++) {
+            mb1.publishMessageTo("mb2", TestMessage.class, message);
+        }
+        // Verify that all messages have been received
+        verify(handler, timeout(4000).times(100)).receiveMessage(any(TestMessage.class));
+    }
+
+    @Test
+    public void testMixedCodecs() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // Binary sender using one connection per message
+        factory.setServerPort(3601);
+        factory.setIdentifier("mb1");
+        factory.setPersistentConnections(false);
+        factory.setMessageCodec(new BinaryMessageCodec());
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 3602);
+
+        // Json relay forwarding the binary messages unchanged
+        factory.setServerPort(3602);
+        factory.setIdentifier("mb2");
+        factory.setPersistentConnections(true);
+        factory.setMessageCodec(new JsonMessageCodec());
+        MessageBus mb2 = factory.create();
+        mb2.addConnection("mb3", "127.0.0.1", 3603);
+
+        // Receiver using the non-blocking receiver
+        factory.setServerPort(3603);
+        factory.setIdentifier("mb3");
+        factory.setReceiverType(ReceiverType.NIO);
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb3 = factory.create();
+        mb3.addMessageResponse(handler);
+
+        // The binary payload contains a line break, which must not split the message
+        TestMessage message = new TestMessage("Hi\nthere");
+        for (int i = 0; i < 10; i++) {
+            mb1.publishMessageTo("mb3", TestMessage.class, message);
+        }
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(handler, timeout(4000).times(10)).receiveMessage(messageCaptor.capture());
+        assertEquals(message.getMsg(), ((TestMessage) messageCaptor.getValue()).getMsg());
+    }
+
+    @Test
+    public void testRouteAdvertisement() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setInitialTimeToLive(1);
+        factory.setRouteAdvertisementInterval(100);
+
+        // Chain of four message buses connected in both directions
+        MessageBus[] buses = new MessageBus[4];
+        for (int i = 0; i < buses.length; i++) {
+            factory.setServerPort(3701 + i);
+            factory.setIdentifier("mb" + (i + 1));
+            buses[i] = factory.create();
+        }
+        for (int i = 0; i < buses.length - 1; i++) {
+            buses[i].addConnection("mb" + (i + 2), "127.0.0.1", 3702 + i);
+            buses[i + 1].addConnection("mb" + (i + 1), "127.0.0.1", 3701 + i);
+        }
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        buses[3].addMessageResponse(handler);
+
+        // Once the routes are advertised, the time to live is derived from the distance, so the configured time to live of one hop is not used
+        Thread.sleep(1000);
+        buses[0].publishMessageTo("mb4", TestMessage.class, new TestMessage("Hi"));
+        verify(handler, timeout(2000).times(1)).receiveMessage(any(TestMessage.class));
+        for (MessageBus bus : buses) {
+            bus.stop();
+        }
+    }
+
+    @Test
+    public void testBroadcastPastNeighbourWithoutAdvertisements() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // Chain of four message buses, only the publisher advertises its routes
+        MessageBus[] buses = new MessageBus[4];
+        for (int i = 0; i < buses.length; i++) {
+            factory.setRouteAdvertisementInterval(i == 0 ? 100 : 0);
+            factory.setServerPort(3971 + i);
+            factory.setIdentifier("mb" + (i + 1));
+            buses[i] = factory.create();
+        }
+        for (int i = 0; i < buses.length - 1; i++) {
+            buses[i].addConnection("mb" + (i + 2), "127.0.0.1", 3972 + i);
+            buses[i + 1].addConnection("mb" + (i + 1), "127.0.0.1", 3971 + i);
+        }
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        buses[3].addMessageResponse(handler);
+
+        // No distance is advertised, so the broadcast keeps the configured time to live and travels three hops
+        Thread.sleep(500);
+        buses[0].publishMessageToAny(TestMessage.class, new TestMessage("Hi"));
+        verify(handler, timeout(2000).times(1)).receiveMessage(any(TestMessage.class));
+        for (MessageBus bus : buses) {
+            bus.stop();
+        }
+    }
+
+    @Test
+    public void testSpanningTreeBroadcast() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setRouteAdvertisementInterval(100);
+        factory.setRouteTimeout(500);
+        factory.setBroadcastMode(BroadcastMode.SPANNING_TREE);
+
+        // Ring of four message buses with a diagonal, connected in both directions
+        MessageBus[] buses = new MessageBus[4];
+        MessageHandler[] handlers = new MessageHandler[4];
+        for (int i = 0; i < buses.length; i++) {
+            factory.setServerPort(3801 + i);
+            factory.setIdentifier("mb" + (i + 1));
+            buses[i] = factory.create();
+            handlers[i] = Mockito.mock(MessageHandler.class);
+            Mockito.when(handlers[i].getType()).thenReturn(TestMessage.class);
+            buses[i].addMessageResponse(handlers[i]);
+        }
+        int[][] links = {{0, 1}, {1, 2}, {2, 3}, {3, 0}, {0, 2}};
+        for (int[] link : links) {
+            buses[link[0]].addConnection("mb" + (link[1] + 1), "127.0.0.1", 3801 + link[1]);
+            buses[link[1]].addConnection("mb" + (link[0] + 1), "127.0.0.1", 3801 + link[0]);
+        }
+
+        // Every message bus receives the broadcast
+        Thread.sleep(1000);
+        buses[0].publishMessageToAny(TestMessage.class, new TestMessage("Hi"));
+        for (int i = 1; i < buses.length; i++) {
+            verify(handlers[i], timeout(2000).times(1)).receiveMessage(any(TestMessage.class));
+        }
+
+        // The tree is repaired, after a connection was removed
+        buses[0].removeConnection("mb2");
+        Thread.sleep(1500);
+        buses[0].publishMessageToAny(TestMessage.class, new TestMessage("Hi"));
+        for (int i = 1; i < buses.length; i++) {
+            verify(handlers[i], timeout(2000).times(2)).receiveMessage(any(TestMessage.class));
+        }
+        for (MessageBus bus : buses) {
+            bus.stop();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // The publisher reaches the receiver directly and over a relay, so the receiver gets every message twice
+        factory.setServerPort(3901);
+        factory.setIdentifier("mb1");
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 3902);
+        mb1.addConnection("mb3", "127.0.0.1", 3903);
+        factory.setServerPort(3902);
+        factory.setIdentifier("mb2");
+        MessageBus mb2 = factory.create();
+        mb2.addConnection("mb3", "127.0.0.1", 3903);
+        factory.setServerPort(3903);
+        factory.setIdentifier("mb3");
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb3 = factory.create();
+        mb3.addMessageResponse(handler);
+
+        for (int i = 0; i < 10; i++) {
+            mb1.publishMessageToAny(TestMessage.class, new TestMessage("Hi"));
+        }
+        verify(handler, timeout(4000).times(10)).receiveMessage(any(TestMessage.class));
+        MessageBusMetrics metrics = mb3.getMetrics();
+        long deadline = System.currentTimeMillis() + 4000;
+        while ((metrics.getDeduplicated().getCount() < 10 || metrics.getDelivered().getCount() < 10) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(10, mb1.getMetrics().getPublished().getCountsByType().get("TestMessage").longValue());
+        assertEquals(10, mb1.getMetrics().getSent().getCountsByPeer().get("mb2").longValue());
+        assertEquals(10, mb1.getMetrics().getSent().getCountsByPeer().get("mb3").longValue());
+        assertEquals(10, mb2.getMetrics().getReceived().getCountsByPeer().get("mb1").longValue());
+        assertEquals(10, mb2.getMetrics().getForwarded().getCountsByType().get("TestMessage").longValue());
+        assertEquals(10, metrics.getReceived().getCount());
+        assertEquals(10, metrics.getDeduplicated().getCount());
+        assertEquals(10, metrics.getDelivered().getCountsByType().get("TestMessage").longValue());
+        assertEquals(10, metrics.getDispatchLatency().getTotalCount());
+        assertTrue(metrics.getParseLatency().getTotalCount() >= 10);
+        assertEquals(0, metrics.getDeliveryQueueDepth());
+        assertEquals(10, metrics.getMessageIdCount());
+        mb1.stop();
+        mb2.stop();
+        mb3.stop();
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // The publisher only reaches the receiver over a relay
+        factory.setTraceSampleRate(1);
+        factory.setServerPort(3951);
+        factory.setIdentifier("mb1");
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 3952);
+        factory.setTraceSampleRate(0);
+        factory.setServerPort(3952);
+        factory.setIdentifier("mb2");
+        MessageBus mb2 = factory.create();
+        mb2.addConnection("mb3", "127.0.0.1", 3953);
+        factory.setServerPort(3953);
+        factory.setIdentifier("mb3");
+        CountDownLatch traced = new CountDownLatch(1);
+        AtomicReference<MessageTrace> receivedTrace = new AtomicReference<>();
+        AtomicInteger hopCount = new AtomicInteger();
+        factory.setTraceListener((messageId, messageType, trace, hops, receiveTimestamp) -> {
+            receivedTrace.set(trace);
+            hopCount.set(hops);
+            traced.countDown();
+        });
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb3 = factory.create();
+        mb3.addMessageResponse(handler);
+
+        mb1.publishMessageTo("mb3", TestMessage.class, new TestMessage("Hi"));
+        verify(handler, timeout(4000)).receiveMessage(any(TestMessage.class));
+        assertTrue(traced.await(4, TimeUnit.SECONDS));
+
+        MessageTrace trace = receivedTrace.get();
+        assertEquals(2, hopCount.get());
+        assertEquals(1, trace.getRelayCount());
+        assertTrue(trace.getOriginTimestamp() <= trace.getReceiveTimestamp(0));
+        assertTrue(trace.getReceiveTimestamp(0) <= trace.getForwardTimestamp(0));
+        assertEquals(1, mb2.getMetrics().getForwardLatency().getTotalCount());
+        assertEquals(1, mb3.getMetrics().getTransitLatency().getTotalCount());
+        long deadline = System.currentTimeMillis() + 4000;
+        while (mb3.getMetrics().getHandlerLatency().getTotalCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, mb3.getMetrics().getQueueLatency().getTotalCount());
+        mb1.stop();
+        mb2.stop();
+        mb3.stop();
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // The requester reaches the responder over a relay. The responder is also connected to a bystander.
+        factory.setRouteTimeout(30000);
+        factory.setServerPort(3961);
+        factory.setIdentifier("mb1");
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 3962);
+        factory.setServerPort(3962);
+        factory.setIdentifier("mb2");
+        MessageBus mb2 = factory.create();
+        mb2.addConnection("mb1", "127.0.0.1", 3961);
+        mb2.addConnection("mb3", "127.0.0.1", 3963);
+        factory.setServerPort(3963);
+        factory.setIdentifier("mb3");
+        MessageBus mb3 = factory.create();
+        mb3.addConnection("mb2", "127.0.0.1", 3962);
+        mb3.addConnection("mb4", "127.0.0.1", 3964);
+        mb3.addMessageResponse(new RequestHandler<TestMessage, TestMessage>(TestMessage.class, TestMessage.class) {
+            @Override
+            public TestMessage handleRequest(TestMessage request) {
+                return request.getMsg().equals("ignore") ? null : new TestMessage(request.getMsg() + " back");
+            }
+        });
+        factory.setServerPort(3964);
+        factory.setIdentifier("mb4");
+        MessageBus mb4 = factory.create();
+
+        CompletableFuture<TestMessage> reply = mb1.request("mb3", TestMessage.class, new TestMessage("Hi"), TestMessage.class, 4000);
+        assertEquals("Hi back", reply.get(4, TimeUnit.SECONDS).getMsg());
+        // The reply followed the route learned from the request instead of being flooded
+        assertEquals(null, mb3.getMetrics().getSent().getCountsByPeer().get("mb4"));
+
+        // Requests without a reply time out
+        CompletableFuture<TestMessage> unanswered = mb1.request("mb3", TestMessage.class, new TestMessage("ignore"), TestMessage.class, 200);
+        try {
+            unanswered.get(4, TimeUnit.SECONDS);
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        mb1.stop();
+        mb2.stop();
+        mb3.stop();
+        mb4.stop();
+    }
+
+    @Test
+    public void testRequestWithAdvertisements() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setRouteAdvertisementInterval(100);
+
+        // Chain of four message buses connected in both directions. Only the responder subscribes the request type, nobody subscribes the reply type.
+        MessageBus[] buses = new MessageBus[4];
+        for (int i = 0; i < buses.length; i++) {
+            factory.setServerPort(3981 + i);
+            factory.setIdentifier("mb" + (i + 1));
+            buses[i] = factory.create();
+        }
+        for (int i = 0; i < buses.length - 1; i++) {
+            buses[i].addConnection("mb" + (i + 2), "127.0.0.1", 3982 + i);
+            buses[i + 1].addConnection("mb" + (i + 1), "127.0.0.1", 3981 + i);
+        }
+        buses[3].addMessageResponse(new RequestHandler<TestMessage, TestMessage>(TestMessage.class, TestMessage.class) {
+            @Override
+            public TestMessage handleRequest(TestMessage request) {
+                return new TestMessage(request.getMsg() + " back");
+            }
+        });
+
+        // Requests and replies reach their receivers, although the relays know which message types are subscribed behind their neighbours
+        Thread.sleep(1000);
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<TestMessage> reply = buses[0].request("mb4", TestMessage.class, new TestMessage("Hi " + i), TestMessage.class, 4000);
+            assertEquals("Hi " + i + " back", reply.get(4, TimeUnit.SECONDS).getMsg());
+        }
+        for (MessageBus bus : buses) {
+            bus.stop();
+        }
+    }
+}
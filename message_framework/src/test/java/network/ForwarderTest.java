@@ -0,0 +1,240 @@
+package network;
+
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ForwarderTest {
+
+    @Test
+    public void testRouting() throws Exception {
+        ServerSocket first = new ServerSocket(6501);
+        ServerSocket second = new ServerSocket(6502);
+        first.setSoTimeout(300);
+        second.setSoTimeout(300);
+        Forwarder forwarder = new Forwarder(new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 30000, 0, BroadcastMode.FLOOD));
+        forwarder.addConnection("first", "127.0.0.1", 6501);
+        forwarder.addConnection("second", "127.0.0.1", 6502);
+
+        // A message published by "far" arrived over "first", so messages for "far" are only sent to "first"
+        forwarder.learnRoute("far", "first");
+        forwarder.forwardMessage("me", "me", "far", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        try (Socket ignored = first.accept()) {
+            assertThrows(SocketTimeoutException.class, second::accept);
+        }
+
+        // Without the connection, the route is forgotten and the message is flooded
+        forwarder.removeConnection("first");
+        forwarder.forwardMessage("me", "me", "far", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        try (Socket ignored = second.accept()) {
+            forwarder.close();
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testUnreachableNextHop() throws Exception {
+        ServerSocket second = new ServerSocket(6508);
+        second.setSoTimeout(2000);
+        Forwarder forwarder = new Forwarder(new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 30000, 0, BroadcastMode.FLOOD));
+        // Nothing listens behind the learned next hop
+        forwarder.addConnection("first", "127.0.0.1", 6507);
+        forwarder.addConnection("second", "127.0.0.1", 6508);
+
+        // The first message fails to reach the next hop, the following messages are flooded until it can be reached again
+        forwarder.learnRoute("far", "first");
+        forwarder.forwardMessage("me", "me", "far", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        Thread.sleep(300);
+        forwarder.forwardMessage("me", "me", "far", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        try (Socket ignored = second.accept()) {
+            forwarder.close();
+        }
+        second.close();
+    }
+
+    @Test
+    public void testSubscriptionPruning() throws Exception {
+        ServerSocket first = new ServerSocket(6503);
+        ServerSocket second = new ServerSocket(6504);
+        first.setSoTimeout(300);
+        second.setSoTimeout(300);
+        Forwarder forwarder = new Forwarder(new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 30000, 1000, BroadcastMode.FLOOD));
+        forwarder.addConnection("first", "127.0.0.1", 6503);
+        forwarder.addConnection("second", "127.0.0.1", 6504);
+
+        // Only message buses behind the second neighbour subscribed the message type
+        RouteAdvertisement firstAdvertisement = new RouteAdvertisement(Collections.singletonMap("first", 0),
+                Collections.singletonMap("first", new RouteAdvertisement.Subscription(0, Collections.singleton("Other"))));
+        RouteAdvertisement secondAdvertisement = new RouteAdvertisement(Collections.singletonMap("second", 0),
+                Collections.singletonMap("second", new RouteAdvertisement.Subscription(0, Collections.singleton("TestMessage"))));
+        assertTrue(forwarder.applyAdvertisement("first", firstAdvertisement, "me"));
+        assertTrue(forwarder.applyAdvertisement("second", secondAdvertisement, "me"));
+        assertFalse(forwarder.applyAdvertisement("second", secondAdvertisement, "me"));
+        forwarder.forwardMessage("me", "me", "any", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        try (Socket ignored = second.accept()) {
+            assertThrows(SocketTimeoutException.class, first::accept);
+        }
+
+        // Messages addressed to a single receiver without a known route are flooded regardless of the subscriptions, since replies are not subscribed
+        forwarder.forwardMessage("me", "me", "far", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        first.setSoTimeout(2000);
+        try (Socket ignored = first.accept()) {
+            first.setSoTimeout(300);
+        }
+
+        // The first neighbour learns about the subscriptions behind the second one, while its own subscriptions are advertised back as unreachable
+        Map<String, RouteAdvertisement.Subscription> subscriptions = forwarder.createAdvertisement("first", "me", Collections.singleton("Mine"), true).getSubscriptions();
+        assertEquals(new RouteAdvertisement.Subscription(0, Collections.singleton("Mine")), subscriptions.get("me"));
+        assertEquals(new RouteAdvertisement.Subscription(1, Collections.singleton("TestMessage")), subscriptions.get("second"));
+        assertEquals(new RouteAdvertisement.Subscription(RoutingTable.INFINITE_DISTANCE, Collections.emptySet()), subscriptions.get("first"));
+        forwarder.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testSubscriptionWithdrawnInCycle() {
+        // Three message buses connected in a triangle, only "a" subscribed the message type
+        String[] buses = {"a", "b", "c"};
+        Map<String, SubscriptionTable> tables = new HashMap<>();
+        Map<String, Set<String>> messageTypes = new HashMap<>();
+        for (String bus : buses) {
+            tables.put(bus, new SubscriptionTable(30000));
+            messageTypes.put(bus, Collections.emptySet());
+        }
+        messageTypes.put("a", Collections.singleton("TestMessage"));
+        exchangeSubscriptions(tables, messageTypes, 3);
+        assertTrue(tables.get("b").isInterested("a", "TestMessage"));
+        assertTrue(tables.get("b").isInterested("c", "TestMessage"));
+        assertFalse(tables.get("a").isInterested("b", "TestMessage"));
+
+        // The withdrawn subscription does not circle between the other message buses
+        messageTypes.put("a", Collections.emptySet());
+        exchangeSubscriptions(tables, messageTypes, 3);
+        for (String bus : buses) {
+            for (String neighbour : buses) {
+                assertFalse(!bus.equals(neighbour) && tables.get(bus).isInterested(neighbour, "TestMessage"));
+            }
+        }
+
+        // Subscriptions of a message bus, which cannot be reached anymore, disappear as well
+        messageTypes.put("a", Collections.singleton("TestMessage"));
+        exchangeSubscriptions(tables, messageTypes, 3);
+        assertTrue(tables.get("c").isInterested("b", "TestMessage"));
+        tables.remove("a");
+        tables.get("b").remove("a");
+        tables.get("c").remove("a");
+        exchangeSubscriptions(tables, messageTypes, RoutingTable.INFINITE_DISTANCE);
+        assertFalse(tables.get("b").isInterested("c", "TestMessage"));
+        assertFalse(tables.get("c").isInterested("b", "TestMessage"));
+    }
+
+    /**
+     * Lets every pair of message buses exchange their subscription advertisements for the given amount of rounds.
+     */
+    private static void exchangeSubscriptions(Map<String, SubscriptionTable> tables, Map<String, Set<String>> messageTypes, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            Map<String, Map<String, Map<String, RouteAdvertisement.Subscription>>> advertisements = new HashMap<>();
+            tables.forEach((bus, table) -> {
+                Map<String, Map<String, RouteAdvertisement.Subscription>> perNeighbour = new HashMap<>();
+                for (String neighbour : tables.keySet()) {
+                    if (!neighbour.equals(bus)) {
+                        perNeighbour.put(neighbour, table.advertisement(neighbour, bus, messageTypes.get(bus), true));
+                    }
+                }
+                advertisements.put(bus, perNeighbour);
+            });
+            advertisements.forEach((bus, perNeighbour) -> perNeighbour.forEach((neighbour, subscriptions) -> tables.get(neighbour).update(bus, subscriptions, neighbour)));
+        }
+    }
+
+    @Test
+    public void testSpanningTree() throws Exception {
+        ServerSocket first = new ServerSocket(6505);
+        ServerSocket second = new ServerSocket(6506);
+        first.setSoTimeout(300);
+        second.setSoTimeout(300);
+        Forwarder forwarder = new Forwarder(new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 30000, 1000, BroadcastMode.SPANNING_TREE));
+        forwarder.addConnection("first", "127.0.0.1", 6505);
+        forwarder.addConnection("second", "127.0.0.1", 6506);
+
+        // The first neighbour routes towards the publisher over this message bus, the second one has its own shorter route
+        Map<String, Integer> firstDistances = new HashMap<>();
+        firstDistances.put("first", 0);
+        firstDistances.put("publisher", RoutingTable.INFINITE_DISTANCE);
+        Map<String, Integer> secondDistances = new HashMap<>();
+        secondDistances.put("second", 0);
+        secondDistances.put("publisher", 1);
+        forwarder.applyAdvertisement("first", new RouteAdvertisement(firstDistances, null), "me");
+        forwarder.applyAdvertisement("second", new RouteAdvertisement(secondDistances, null), "me");
+
+        // Only the child in the tree of the publisher receives the broadcast
+        forwarder.forwardMessage("second", "publisher", "any", "TestMessage", OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8)));
+        try (Socket ignored = first.accept()) {
+            assertThrows(SocketTimeoutException.class, second::accept);
+        }
+        forwarder.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testRouteExpires() throws Exception {
+        RoutingTable routingTable = new RoutingTable(100);
+        routingTable.learn("far", "first");
+        routingTable.learn("far", "second");
+        assertEquals("second", routingTable.nextHop("far"));
+
+        Thread.sleep(200);
+        assertNull(routingTable.nextHop("far"));
+        assertEquals(0, routingTable.size());
+    }
+
+    @Test
+    public void testDistanceVector() {
+        RoutingTable routingTable = new RoutingTable(30000);
+        Map<String, Integer> first = new HashMap<>();
+        first.put("first", 0);
+        first.put("far", 2);
+        first.put("me", 1);
+        Map<String, Integer> second = new HashMap<>();
+        second.put("second", 0);
+        second.put("far", 1);
+        routingTable.update("first", first, "me");
+        routingTable.update("second", second, "me");
+
+        // The shorter route wins and this message bus is never part of the table
+        assertEquals("second", routingTable.nextHop("far"));
+        assertEquals(2, routingTable.distance("far"));
+        assertEquals(-1, routingTable.distance("me"));
+        assertEquals(2, routingTable.maxDistance());
+
+        // Routes over a neighbour are advertised to it as unreachable
+        Map<String, Integer> advertisement = routingTable.advertisement("second", "me");
+        assertEquals(0, (int) advertisement.get("me"));
+        assertEquals(RoutingTable.INFINITE_DISTANCE, (int) advertisement.get("far"));
+        assertEquals(2, (int) routingTable.advertisement("first", "me").get("far"));
+
+        // A withdrawn route is replaced by the next advertisement of another neighbour
+        second.remove("far");
+        routingTable.update("second", second, "me");
+        assertNull(routingTable.nextHop("far"));
+        routingTable.update("first", first, "me");
+        assertEquals("first", routingTable.nextHop("far"));
+        assertEquals(3, routingTable.distance("far"));
+    }
+}
@@ -0,0 +1,154 @@
+package network;
+
+import ch.qos.logback.classic.Level;
+import mf.MessageBusController;
+import mf.MessageBusFactory;
+import mf.MessageHandler;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import utilities.DeliveryOverflowPolicy;
+import utilities.DeliveryQueueType;
+import utilities.DeliverySettings;
+import utilities.MessageDeliverer;
+import utilities.MessageIdStorage;
+import utilities.ThreadingMode;
+import utilities.WaitStrategy;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks, that the paths taken by every message do not create objects for log statements, while debug and trace logging are disabled.
+ * The allocated bytes of the current thread are measured with the ThreadMXBean of the JVM.
+ */
+public class LoggingAllocationTest {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private com.sun.management.ThreadMXBean threads;
+    private ch.qos.logback.classic.Logger root;
+    private Level previousLevel;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        previousLevel = root.getLevel();
+        root.setLevel(Level.INFO);
+    }
+
+    @After
+    public void tearDown() {
+        if (root != null) {
+            root.setLevel(previousLevel);
+        }
+    }
+
+    @Test
+    public void testMessageIdStorage() {
+        MessageIdStorage storage = new MessageIdStorage(1000);
+        String[] messageIds = new String[100];
+        for (int i = 0; i < messageIds.length; i++) {
+            messageIds[i] = "4711:" + i;
+            storage.add(messageIds[i]);
+        }
+        assertAllocationFree(i -> {
+            storage.add(messageIds[i % messageIds.length]);
+            storage.contains(messageIds[i % messageIds.length]);
+        });
+    }
+
+    @Test
+    public void testDuplicateMessage() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setIdentifier("mb1");
+        factory.setServerPort(4101);
+        MessageBusController messageBus = (MessageBusController) factory.create();
+        byte[] message = ("{\"messageId\":\"4711:1\",\"senderId\":\"mb2\",\"publisherId\":\"mb2\",\"receiverId\":\"any\","
+                + "\"messageType\":\"TestMessage\",\"timeToLive\":1,\"message\":{\"msg\":\"Hi\"}}").getBytes(StandardCharsets.UTF_8);
+        messageBus.processMessage(message);
+        try {
+            assertAllocationFree(i -> messageBus.processMessage(message, 0, message.length));
+        } finally {
+            messageBus.stop();
+        }
+    }
+
+    @Test
+    public void testFullOutboundQueue() throws Exception {
+        // Nobody listens on the port, so the writer keeps retrying its first message and the queue stays full
+        Sender sender = new Sender("127.0.0.1", 4201, new ConnectionSettings(true, 1, 1000, 10_000, 10_000, 200, 1, OverflowPolicy.DROP_NEWEST,
+                1024, 0, 0, 0, BroadcastMode.FLOOD));
+        OutboundMessage message = OutboundMessage.of("Hi".getBytes(StandardCharsets.UTF_8));
+        sender.sendMessage(message);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sender.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        sender.sendMessage(message);
+        try {
+            assertAllocationFree(i -> sender.sendMessage(message));
+        } finally {
+            sender.close();
+        }
+    }
+
+    @Test
+    public void testFullDeliveryQueue() throws Exception {
+        MessageDeliverer deliverer = new MessageDeliverer(1, new DeliverySettings(1, Collections.emptyMap(), ThreadingMode.PLATFORM,
+                DeliveryOverflowPolicy.DROP, 0, null, DeliveryQueueType.RING_BUFFER, WaitStrategy.PARK));
+        deliverer.start();
+        CountDownLatch release = new CountDownLatch(1);
+        MessageHandler<Integer> handler = new MessageHandler<Integer>(Integer.class) {
+            @Override
+            public void receiveMessage(Integer message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // The first message blocks the worker, the second one fills the queue
+        Integer message = 1;
+        deliverer.deliverMessage(message, handler, "mb1");
+        Thread.sleep(100);
+        deliverer.deliverMessage(message, handler, "mb1");
+        try {
+            assertAllocationFree(i -> deliverer.deliverMessage(message, handler, "mb1"));
+        } finally {
+            release.countDown();
+            deliverer.stopDelivering();
+        }
+    }
+
+    /**
+     * Runs an operation and asserts, that less than one byte per operation was allocated after the warmup.
+     */
+    private void assertAllocationFree(Operation operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run(i);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run(i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated < ITERATIONS, "Allocated " + allocated + " bytes for " + ITERATIONS + " operations.");
+    }
+
+    private interface Operation {
+        void run(int iteration);
+    }
+}
@@ -0,0 +1,102 @@
+package network;
+
+import message_types.TestMessage;
+import mf.MessageBus;
+import mf.MessageBusFactory;
+import mf.MessageHandler;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class NioReceiverTest {
+
+    @Test
+    public void testFramedAndLegacyConnections() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+
+        // Set up sender using persistent connections
+        factory.setIdentifier("mb1");
+        factory.setServerPort(6201);
+        MessageBus mb1 = factory.create();
+        mb1.addConnection("mb2", "127.0.0.1", 6202);
+
+        // Set up receiver using the non-blocking receiver
+        factory.setIdentifier("mb2");
+        factory.setServerPort(6202);
+        factory.setReceiverType(ReceiverType.NIO);
+        factory.setReceiverThreads(2);
+        factory.setReceiveBufferSize(64);
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb2 = factory.create();
+        mb2.addMessageResponse(handler);
+
+        // Framed messages over a persistent connection
+        TestMessage message = new TestMessage("Hi");
+        for (int i = 0; i < 100; i++) {
+            mb1.publishMessageTo("mb2", TestMessage.class, message);
+        }
+
+        // Legacy messages, one message per connection
+        for (int i = 0; i < 50; i++) {
+            try (Socket socket = new Socket("127.0.0.1", 6202)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("{\"message\":{\"msg\":\"Hi\"},\"messageId\":\"legacy:" + i + "\",\"senderId\":\"legacy\","
+                        + "\"receiverId\":\"mb2\",\"messageType\":\"TestMessage\",\"timeToLive\":1}").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        verify(handler, timeout(4000).times(150)).receiveMessage(any(TestMessage.class));
+
+        // The amount of receiver threads does not depend on the amount of connections
+        long receiverThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("t-bus-receiver-6202-"))
+                .count();
+        assertEquals(2, receiverThreads);
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        MessageBusFactory factory = new MessageBusFactory();
+        factory.setIdentifier("mb2");
+        factory.setServerPort(6203);
+        factory.setReceiverType(ReceiverType.NIO);
+        factory.setReceiverThreads(1);
+        factory.setReceiveBufferSize(4096);
+        MessageHandler handler = Mockito.mock(MessageHandler.class);
+        Mockito.when(handler.getType()).thenReturn(TestMessage.class);
+        MessageBus mb2 = factory.create();
+        mb2.addMessageResponse(handler);
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (int i = 0; i < 4; i++) {
+            byte[] payload = ("{\"message\":{\"msg\":\"Hi\"},\"messageId\":\"framed:" + i + "\",\"senderId\":\"framed\","
+                    + "\"receiverId\":\"mb2\",\"messageType\":\"TestMessage\",\"timeToLive\":1}").getBytes(StandardCharsets.UTF_8);
+            WireProtocol.writeFrame(frames, WireProtocol.VERSION, WireProtocol.NO_FLAGS, OutboundMessage.of(payload));
+        }
+        byte[] bytes = frames.toByteArray();
+
+        try (Socket socket = new Socket("127.0.0.1", 6203)) {
+            OutputStream out = socket.getOutputStream();
+            WireProtocol.negotiate(out, socket.getInputStream());
+            // Three complete frames are passed on out of the read buffer, the split fourth frame is completed by the next read
+            int split = bytes.length - 20;
+            out.write(bytes, 0, split);
+            out.flush();
+            verify(handler, timeout(2000).times(3)).receiveMessage(any(TestMessage.class));
+            out.write(bytes, split, bytes.length - split);
+            out.flush();
+            verify(handler, timeout(2000).times(4)).receiveMessage(any(TestMessage.class));
+        }
+        mb2.stop();
+    }
+}
@@ -0,0 +1,181 @@
+package network;
+
+import org.junit.Test;
+import utilities.MessageBusMetrics;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SenderTest {
+
+    @Test
+    public void testFallbackToLegacyPeer() throws Exception {
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        ServerSocket serverSocket = new ServerSocket(6101);
+
+        // A legacy peer reads every connection until it is closed
+        Thread legacyPeer = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    received.add(socket.getInputStream().readAllBytes());
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        legacyPeer.start();
+
+        Sender sender = new Sender("127.0.0.1", 6101, new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 0, 0, BroadcastMode.FLOOD));
+        sender.sendMessage(OutboundMessage.of("first".getBytes(StandardCharsets.UTF_8)));
+        sender.sendMessage(OutboundMessage.of("second".getBytes(StandardCharsets.UTF_8)));
+
+        // The preface is received by the legacy peer until the handshake timed out several times, afterwards every message arrives on its own socket
+        for (int i = 0; i < Connection.LEGACY_HANDSHAKE_TIMEOUTS; i++) {
+            assertEquals(WireProtocol.PREFACE_LENGTH, received.poll(2, TimeUnit.SECONDS).length);
+        }
+        assertEquals("first", new String(received.poll(2, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+        assertEquals("second", new String(received.poll(2, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+
+        // After the maximum reconnection delay the peer is probed again and detected with a single timeout
+        Thread.sleep(1200);
+        sender.sendMessage(OutboundMessage.of("third".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(WireProtocol.PREFACE_LENGTH, received.poll(2, TimeUnit.SECONDS).length);
+        assertEquals("third", new String(received.poll(2, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+
+        // The failed probe doubled the delay, so the peer is not probed again after the next maximum reconnection delay
+        Thread.sleep(1200);
+        sender.sendMessage(OutboundMessage.of("fourth".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("fourth", new String(received.poll(2, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+        Thread.sleep(1000);
+        sender.sendMessage(OutboundMessage.of("fifth".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(WireProtocol.PREFACE_LENGTH, received.poll(2, TimeUnit.SECONDS).length);
+        assertEquals("fifth", new String(received.poll(2, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+        sender.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testSlowHandshakeIsNoLegacyPeer() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        ServerSocket serverSocket = new ServerSocket(6102);
+
+        // The peer answers the first handshake too late and closes the second connection, before it acknowledges the third one
+        Thread slowPeer = new Thread(() -> {
+            try {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.getInputStream().readAllBytes();
+                }
+                serverSocket.accept().close();
+                try (Socket socket = serverSocket.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    in.readByte();
+                    byte version = WireProtocol.accept(in, socket.getOutputStream());
+                    byte[] payload;
+                    while ((payload = WireProtocol.readFrame(in, version)) != null) {
+                        received.add(new String(payload, StandardCharsets.UTF_8));
+                    }
+                }
+            } catch (IOException e) {
+                received.add(e.getMessage());
+            }
+        });
+        slowPeer.start();
+
+        Sender sender = new Sender("127.0.0.1", 6102, new ConnectionSettings(true, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 0, 0, BroadcastMode.FLOOD));
+        sender.sendMessage(OutboundMessage.of("first".getBytes(StandardCharsets.UTF_8)));
+        sender.sendMessage(OutboundMessage.of("second".getBytes(StandardCharsets.UTF_8)));
+
+        // Both messages arrive as frames over the persistent connection
+        assertEquals("first", received.poll(3, TimeUnit.SECONDS));
+        assertEquals("second", received.poll(2, TimeUnit.SECONDS));
+        sender.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        ServerSocket serverSocket = new ServerSocket(6401);
+
+        // A framed peer acknowledging the preface and reading frames
+        Thread framedPeer = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                in.readByte();
+                byte version = WireProtocol.accept(in, socket.getOutputStream());
+                byte[] payload;
+                while ((payload = WireProtocol.readFrame(in, version)) != null) {
+                    received.add(new String(payload, StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                received.add(e.getMessage());
+            }
+        });
+        framedPeer.start();
+
+        // A batch is closed after 25 bytes or a delay of one second
+        Sender sender = new Sender("127.0.0.1", 6401, new ConnectionSettings(true, 1, 1000, 100, 1000, 1000, 10, OverflowPolicy.BLOCK, 25, 1_000_000, 0, 0, BroadcastMode.FLOOD));
+        for (int i = 0; i < 3; i++) {
+            sender.sendMessage(OutboundMessage.of(("message" + i + "!").getBytes(StandardCharsets.UTF_8)));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("message" + i + "!", received.poll(500, TimeUnit.MILLISECONDS));
+        }
+
+        // A single message waits for the delay
+        sender.sendMessage(OutboundMessage.of("last".getBytes(StandardCharsets.UTF_8)));
+        assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals("last", received.poll(2, TimeUnit.SECONDS));
+        sender.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testFailedSendOnNewSocketIsDropped() throws Exception {
+        // Nobody listens on the port, so the message cannot be sent on its own socket
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        Sender sender = new Sender("peer", "127.0.0.1", 6103, new ConnectionSettings(false, 1, 1000, 100, 1000, 200, 10, OverflowPolicy.BLOCK, 1024, 0, 0, 0, BroadcastMode.FLOOD), metrics);
+        sender.sendMessage(OutboundMessage.of(new byte[]{1}));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (metrics.getDropped().getCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, metrics.getDropped().getCount());
+        assertEquals(1L, metrics.getDropped().getCountsByPeer().get("peer"));
+        sender.close();
+    }
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        // Nobody listens on the port, so the writer keeps retrying the first message
+        Sender dropNewest = new Sender("127.0.0.1", 6301, new ConnectionSettings(true, 1, 1000, 1000, 1000, 200, 2, OverflowPolicy.DROP_NEWEST, 1024, 0, 0, 0, BroadcastMode.FLOOD));
+        Sender dropOldest = new Sender("127.0.0.1", 6301, new ConnectionSettings(true, 1, 1000, 1000, 1000, 200, 2, OverflowPolicy.DROP_OLDEST, 1024, 0, 0, 0, BroadcastMode.FLOOD));
+        dropNewest.sendMessage(OutboundMessage.of(new byte[]{1}));
+        dropOldest.sendMessage(OutboundMessage.of(new byte[]{1}));
+        Thread.sleep(100);
+        // Fill the queues
+        for (int i = 0; i < 2; i++) {
+            assertTrue(dropNewest.sendMessage(OutboundMessage.of(new byte[]{2})));
+            assertTrue(dropOldest.sendMessage(OutboundMessage.of(new byte[]{2})));
+        }
+
+        assertFalse(dropNewest.sendMessage(OutboundMessage.of(new byte[]{3})));
+        assertTrue(dropOldest.sendMessage(OutboundMessage.of(new byte[]{3})));
+        assertEquals(2, dropNewest.getQueueDepth());
+        assertEquals(2, dropOldest.getQueueDepth());
+        dropNewest.close();
+        dropOldest.close();
+    }
+}
@@ -4,9 +4,12 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import message_types.TestMessage;
 import mf.MessagePackage;
+import mf.MessageTrace;
 import utilities.MessageConverter;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,4 +36,168 @@ public class MessageConverterTest {
         assertEquals("TestMessage", jsonNode.get("messageType").asText());
         assertEquals("Hi", jsonNode.get("message").get("msg").asText());
     }
+
+    @Test
+    public void testParseOnceForForwardingAndDelivery() throws Exception {
+        MessageConverter mc = new MessageConverter(null);
+        ObjectMapper om = new ObjectMapper();
+
+        TestMessage message = new TestMessage("Hi");
+        MessagePackage messagePackage = new MessagePackage("someId", "me", "you", TestMessage.class.getSimpleName(), 3, message);
+        MessageEnvelope envelope = mc.parse(mc.convertToJson(TestMessage.class, messagePackage).getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("someId", envelope.getMessageId());
+        assertEquals("me", envelope.getSenderId());
+        assertEquals("you", envelope.getReceiverId());
+        assertEquals("TestMessage", envelope.getMessageType());
+        assertEquals(3, envelope.getTimeToLive());
+
+        // Forwarding only replaces the meta data
+        JsonNode forwarded = om.readTree(mc.convertToForwardedMessage(envelope, 2, "re\"lay").toByteArray());
+        assertEquals("re\"lay", forwarded.get("senderId").asText());
+        assertEquals(2, forwarded.get("timeToLive").asInt());
+        assertEquals("Hi", forwarded.get("message").get("msg").asText());
+
+        // The envelope is not affected by forwarding
+        assertEquals("Hi", mc.convertPayload(envelope, TestMessage.class).getMsg());
+        assertEquals("me", envelope.getSenderId());
+    }
+
+    @Test
+    public void testUnknownFieldsAreForwarded() throws Exception {
+        MessageConverter mc = new MessageConverter(null);
+        ObjectMapper om = new ObjectMapper();
+
+        String json = "{ \"future\" : {\"a\": [1, 2]}, \"messageId\":\"id\",\"senderId\":\"me\",\"receiverId\":\"any\","
+                + "\"messageType\":\"TestMessage\",\"timeToLive\":5, \"message\" : {\"msg\":\"Hi\"}, \"flag\":true}";
+        MessageEnvelope envelope = mc.parse(json.getBytes(StandardCharsets.UTF_8));
+        JsonNode forwarded = om.readTree(mc.convertToForwardedMessage(envelope, 4, "relay").toByteArray());
+
+        assertEquals(2, forwarded.get("future").get("a").get(1).asInt());
+        assertTrue(forwarded.get("flag").asBoolean());
+        assertEquals("Hi", forwarded.get("message").get("msg").asText());
+        assertEquals("Hi", mc.convertPayload(envelope, TestMessage.class).getMsg());
+    }
+
+    @Test
+    public void testBinaryCodec() throws Exception {
+        MessageConverter mc = new MessageConverter(null, new BinaryMessageCodec());
+
+        TestMessage message = new TestMessage("Hi");
+        MessagePackage messagePackage = new MessagePackage("someId", "me", "you", TestMessage.class.getSimpleName(), 3, message);
+        byte[] binary = mc.encode(TestMessage.class, messagePackage).toByteArray();
+        byte[] json = new MessageConverter(null).encode(TestMessage.class, messagePackage).toByteArray();
+        assertEquals(BinaryMessageCodec.FORMAT, binary[0]);
+        assertTrue(binary.length < json.length);
+
+        // Both formats are understood, no matter which codec is used for encoding
+        MessageEnvelope envelope = mc.parse(binary);
+        assertEquals("someId", envelope.getMessageId());
+        assertEquals("me", envelope.getSenderId());
+        assertEquals("you", envelope.getReceiverId());
+        assertEquals("TestMessage", envelope.getMessageType());
+        assertEquals(3, envelope.getTimeToLive());
+        assertEquals("Hi", mc.convertPayload(envelope, TestMessage.class).getMsg());
+        assertEquals("Hi", mc.convertPayload(mc.parse(json), TestMessage.class).getMsg());
+        assertEquals("me", mc.parse(mc.convertToForwardedMessage(mc.parse(json), 2, "relay").toByteArray()).getPublisherId());
+
+        // Forwarded messages keep their format
+        MessageEnvelope forwarded = new MessageConverter(null).parse(mc.convertToForwardedMessage(envelope, 2, "relay").toByteArray());
+        assertEquals("relay", forwarded.getSenderId());
+        assertEquals("me", forwarded.getPublisherId());
+        assertEquals(2, forwarded.getTimeToLive());
+        assertEquals("Hi", mc.convertPayload(forwarded, TestMessage.class).getMsg());
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        TestMessage message = new TestMessage("Hi");
+        MessageTrace trace = new MessageTrace(1000, 3, null);
+        MessagePackage traced = new MessagePackage("someId", "me", "you", TestMessage.class.getSimpleName(), 3, message, trace);
+        MessagePackage untraced = new MessagePackage("someId", "me", "you", TestMessage.class.getSimpleName(), 3, message);
+
+        for (MessageCodec codec : new MessageCodec[]{new JsonMessageCodec(), new BinaryMessageCodec()}) {
+            MessageConverter mc = new MessageConverter(null, codec);
+            // Untraced messages do not contain a trace on the wire
+            byte[] plain = mc.encode(TestMessage.class, untraced).toByteArray();
+            assertNull(mc.parse(plain).getTrace());
+            assertTrue(mc.encode(TestMessage.class, traced).toByteArray().length > plain.length);
+
+            // Every relay appends its hop, the message and the other meta data are unchanged
+            MessageEnvelope envelope = mc.parse(mc.encode(TestMessage.class, traced).toByteArray());
+            assertEquals(1000, envelope.getTrace().getOriginTimestamp());
+            assertEquals(0, envelope.getTrace().getRelayCount());
+            assertEquals(1, envelope.getTrace().getHopCount(envelope.getTimeToLive()));
+            for (int relay = 0; relay < 2; relay++) {
+                MessageTrace hop = envelope.getTrace().withHop(2000 + relay * 1000, 2500 + relay * 1000);
+                envelope = mc.parse(mc.convertToForwardedMessage(envelope, envelope.getTimeToLive() - 1, "relay" + relay, hop).toByteArray());
+            }
+            MessageTrace received = envelope.getTrace();
+            assertEquals(2, received.getRelayCount());
+            assertEquals(3, received.getHopCount(envelope.getTimeToLive()));
+            assertEquals(3000, received.getReceiveTimestamp(1));
+            assertEquals(3500, received.getForwardTimestamp(1));
+            assertEquals("me", envelope.getPublisherId());
+            assertEquals("relay1", envelope.getSenderId());
+            assertEquals("Hi", mc.convertPayload(envelope, TestMessage.class).getMsg());
+
+            // Forwarding without a new hop passes the trace on unchanged
+            MessageEnvelope passed = mc.parse(mc.convertToForwardedMessage(envelope, 0, "relay2").toByteArray());
+            assertEquals(2, passed.getTrace().getRelayCount());
+            assertEquals("me", passed.getPublisherId());
+        }
+    }
+
+    @Test
+    public void testRequestAndReplyFields() throws Exception {
+        TestMessage message = new TestMessage("Hi");
+        MessagePackage request = new MessagePackage("requestId", "me", "you", TestMessage.class.getSimpleName(), 3, message, null, "me", null);
+        MessagePackage reply = new MessagePackage("replyId", "you", "me", TestMessage.class.getSimpleName(), 3, message, null, null, "requestId");
+
+        for (MessageCodec codec : new MessageCodec[]{new JsonMessageCodec(), new BinaryMessageCodec()}) {
+            MessageConverter mc = new MessageConverter(null, codec);
+            MessageEnvelope envelope = mc.parse(mc.encode(TestMessage.class, request).toByteArray());
+            assertEquals("me", envelope.getReplyTo());
+            assertNull(envelope.getCorrelationId());
+
+            // Relays pass both fields on
+            envelope = mc.parse(mc.convertToForwardedMessage(mc.parse(mc.encode(TestMessage.class, reply).toByteArray()), 2, "relay").toByteArray());
+            assertNull(envelope.getReplyTo());
+            assertEquals("requestId", envelope.getCorrelationId());
+            assertEquals("you", envelope.getPublisherId());
+            assertEquals("Hi", mc.convertPayload(envelope, TestMessage.class).getMsg());
+
+            envelope = mc.parse(mc.encode(TestMessage.class, new MessagePackage("id", "me", "you", "TestMessage", 3, message)).toByteArray());
+            assertNull(envelope.getReplyTo());
+            assertNull(envelope.getCorrelationId());
+        }
+    }
+
+    @Test
+    public void testLocateMessageId() throws Exception {
+        MessageConverter mc = new MessageConverter(null, new BinaryMessageCodec());
+        TestMessage message = new TestMessage("Hi");
+
+        // The located message id matches the parsed one for both formats and both forms of message ids
+        for (String messageId : new String[]{MessageIds.format(-42, 7), "legacy:counter"}) {
+            MessagePackage messagePackage = new MessagePackage(messageId, "me", "you", TestMessage.class.getSimpleName(), 3, message);
+            byte[] binary = mc.encode(TestMessage.class, messagePackage).toByteArray();
+            byte[] json = new MessageConverter(null).encode(TestMessage.class, messagePackage).toByteArray();
+            for (byte[] data : new byte[][]{binary, json}) {
+                byte[] buffer = new byte[data.length + 5];
+                System.arraycopy(data, 0, buffer, 5, data.length);
+                long location = mc.locateMessageId(buffer, 5, data.length);
+                int offset = (int) (location >>> 32);
+                int length = (int) location;
+                assertEquals(MessageIds.origin(messageId), MessageIds.origin(buffer, offset, length));
+                assertEquals(MessageIds.sequence(messageId), MessageIds.sequence(buffer, offset, length));
+            }
+        }
+
+        // Json messages not starting with the message id or containing escape sequences are parsed completely
+        byte[] reordered = "{\"senderId\":\"me\",\"messageId\":\"1:2\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] escaped = "{ \"messageId\" : \"1:\\u0032\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(-1, mc.locateMessageId(reordered, 0, reordered.length));
+        assertEquals(-1, mc.locateMessageId(escaped, 0, escaped.length));
+    }
 }
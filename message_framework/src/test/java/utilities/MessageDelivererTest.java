@@ -0,0 +1,248 @@
+package utilities;
+
+import message_types.TestMessage;
+import mf.DroppedMessageListener;
+import mf.MessageHandler;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageDelivererTest {
+
+    @Test
+    public void testSlowHandlerDoesNotStallOtherTypes() throws Exception {
+        MessageDeliverer deliverer = new MessageDeliverer(1000, settings(2, DeliveryOverflowPolicy.DROP, null));
+        deliverer.start();
+
+        // Handler blocking its worker until released
+        CountDownLatch release = new CountDownLatch(1);
+        MessageHandler<TestMessage> slowHandler = new MessageHandler<TestMessage>(TestMessage.class) {
+            @Override
+            public void receiveMessage(TestMessage message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // Handler of another message type recording the delivery order
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+        MessageHandler<Integer> fastHandler = new MessageHandler<Integer>(Integer.class) {
+            @Override
+            public void receiveMessage(Integer message) {
+                received.add(message);
+                done.countDown();
+            }
+        };
+
+        deliverer.deliverMessage(new TestMessage("Hi"), slowHandler, "mb1");
+        for (int i = 0; i < 100; i++) {
+            deliverer.deliverMessage(i, fastHandler, "mb" + (i % 3));
+        }
+
+        // Messages of the other type are delivered in order, while the slow handler is still blocked
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        release.countDown();
+        deliverer.stopDelivering();
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(ThreadingMode.virtualThreadsSupported());
+        MessageDeliverer deliverer = new MessageDeliverer(10000, new DeliverySettings(1000, Collections.singletonMap("Integer", 1000), ThreadingMode.VIRTUAL,
+                DeliveryOverflowPolicy.DROP, 0, null, DeliveryQueueType.BLOCKING, WaitStrategy.PARK));
+        deliverer.start();
+
+        // Blocking handlers of different senders wait at the same time. Senders sharing a lane wait for each other, so not all messages are counted.
+        CountDownLatch allBlocked = new CountDownLatch(200);
+        MessageHandler<Integer> blockingHandler = new MessageHandler<Integer>(Integer.class) {
+            @Override
+            public void receiveMessage(Integer message) {
+                allBlocked.countDown();
+                try {
+                    allBlocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            deliverer.deliverMessage(i, blockingHandler, "mb" + i);
+        }
+        assertTrue(allBlocked.await(4, TimeUnit.SECONDS));
+        deliverer.stopDelivering();
+    }
+
+    @Test
+    public void testPartitionByPublisher() throws Exception {
+        MessageDeliverer deliverer = new MessageDeliverer(1000, new DeliverySettings(8, Collections.singletonMap("Integer", 8), ThreadingMode.PLATFORM,
+                DeliveryOverflowPolicy.DROP, 0, null, DeliveryQueueType.BLOCKING, WaitStrategy.PARK));
+        deliverer.start();
+        CountDownLatch done = new CountDownLatch(100);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        MessageHandler<Integer> handler = new MessageHandler<Integer>(Integer.class) {
+            @Override
+            public void receiveMessage(Integer message) {
+                threads.add(Thread.currentThread());
+                received.add(message);
+                done.countDown();
+            }
+        };
+
+        // Messages of one publisher arrive over different neighbours, but are still delivered by a single worker in order
+        for (int i = 0; i < 100; i++) {
+            deliverer.deliverMessage(i, handler, "neighbour" + (i % 4), "mb1", System.nanoTime());
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(1, threads.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        deliverer.stopDelivering();
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception {
+        List<Object> dropped = new CopyOnWriteArrayList<>();
+        MessageDeliverer deliverer = new MessageDeliverer(1, settings(1, DeliveryOverflowPolicy.DROP, (message, type) -> dropped.add(message)));
+        deliverer.start();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        MessageHandler<Integer> handler = blockingHandler(release, received);
+
+        // The first message blocks the worker, the second one fills the queue
+        deliverer.deliverMessage(0, handler, "mb1");
+        Thread.sleep(100);
+        deliverer.deliverMessage(1, handler, "mb1");
+        deliverer.deliverMessage(2, handler, "mb1");
+
+        assertEquals(1, deliverer.getDroppedMessageCount());
+        assertEquals(Collections.singletonList(2), dropped);
+        release.countDown();
+        deliverer.stopDelivering();
+    }
+
+    @Test
+    public void testSpillPolicyKeepsOrder() throws Exception {
+        MessageDeliverer deliverer = new MessageDeliverer(1, settings(1, DeliveryOverflowPolicy.SPILL, null));
+        deliverer.start();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        MessageHandler<Integer> handler = blockingHandler(release, received);
+
+        // Messages not fitting into the queue are spilled to disk
+        for (int i = 0; i < 50; i++) {
+            deliverer.deliverMessage(i, handler, "mb1");
+        }
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (received.size() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, deliverer.getDroppedMessageCount());
+        assertEquals(50, received.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        deliverer.stopDelivering();
+    }
+
+    @Test
+    public void testStopReleasesBlockedReceiver() throws Exception {
+        MessageDeliverer deliverer = new MessageDeliverer(1, settings(1, DeliveryOverflowPolicy.BLOCK, null));
+        deliverer.start();
+        CountDownLatch release = new CountDownLatch(1);
+        MessageHandler<Integer> handler = blockingHandler(release, new CopyOnWriteArrayList<>());
+        deliverer.deliverMessage(0, handler, "mb1");
+        Thread.sleep(100);
+        deliverer.deliverMessage(1, handler, "mb1");
+
+        // The receiving thread waits for room in the queue until the deliverer is stopped
+        Thread receiver = new Thread(() -> deliverer.deliverMessage(2, handler, "mb1"));
+        receiver.start();
+        receiver.join(300);
+        assertTrue(receiver.isAlive());
+        deliverer.stopDelivering();
+        receiver.join(1000);
+        assertFalse(receiver.isAlive());
+        assertEquals(1, deliverer.getDroppedMessageCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            MessageDeliverer deliverer = new MessageDeliverer(64, new DeliverySettings(1, Collections.emptyMap(), ThreadingMode.PLATFORM,
+                    DeliveryOverflowPolicy.BLOCK, 0, null, DeliveryQueueType.RING_BUFFER, waitStrategy));
+            deliverer.start();
+            List<Integer> received = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(4000);
+            MessageHandler<Integer> handler = new MessageHandler<Integer>(Integer.class) {
+                @Override
+                public void receiveMessage(Integer message) {
+                    received.add(message);
+                    done.countDown();
+                }
+            };
+
+            // Several receiving threads fill the small ring buffer at the same time
+            Thread[] receivers = new Thread[4];
+            for (int t = 0; t < receivers.length; t++) {
+                int offset = t * 1000;
+                receivers[t] = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        deliverer.deliverMessage(offset + i, handler, "mb1");
+                    }
+                });
+                receivers[t].start();
+            }
+            assertTrue(done.await(4, TimeUnit.SECONDS), waitStrategy.name());
+            deliverer.stopDelivering();
+
+            // No message is lost and the messages of every receiving thread keep their order
+            assertEquals(0, deliverer.getDroppedMessageCount());
+            int[] last = {-1, -1, -1, -1};
+            for (int message : received) {
+                assertTrue(message > last[message / 1000]);
+                last[message / 1000] = message;
+            }
+        }
+    }
+
+    private static DeliverySettings settings(int threads, DeliveryOverflowPolicy overflowPolicy, DroppedMessageListener listener) {
+        return new DeliverySettings(threads, Collections.emptyMap(), ThreadingMode.PLATFORM, overflowPolicy, 1024 * 1024, listener,
+                DeliveryQueueType.BLOCKING, WaitStrategy.PARK);
+    }
+
+    private static MessageHandler<Integer> blockingHandler(CountDownLatch release, List<Integer> received) {
+        return new MessageHandler<Integer>(Integer.class) {
+            @Override
+            public void receiveMessage(Integer message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(message);
+            }
+        };
+    }
+}
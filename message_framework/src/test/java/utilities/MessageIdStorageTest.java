@@ -7,8 +7,12 @@ import mf.MessageHandler;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
@@ -59,4 +63,59 @@ public class MessageIdStorageTest {
             assertTrue(storage.contains(String.valueOf(i)));
         }
     }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        MessageIdStorage storage = new MessageIdStorage(100000);
+        AtomicInteger added = new AtomicInteger();
+
+        // Several receivers add the same message ids at the same time
+        Thread[] receivers = new Thread[4];
+        for (int t = 0; t < receivers.length; t++) {
+            receivers[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (storage.add(String.valueOf(i))) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            receivers[t].start();
+        }
+        for (Thread receiver : receivers) {
+            receiver.join();
+        }
+
+        // Every message id is only accepted once
+        assertEquals(10000, added.get());
+    }
+
+    @Test
+    public void testCompactMessageIds() {
+        MessageIdStorage storage = new MessageIdStorage(10);
+        int origin = MessageIds.defaultOrigin("mb1");
+
+        // Compact ids and legacy ids of the same message bus are equal
+        assertTrue(storage.add(origin, 1L << 40));
+        assertFalse(storage.add(MessageIds.format(origin, 1L << 40)));
+        assertTrue(storage.add(origin, 2));
+        assertFalse(storage.add("mb1:2"));
+        assertTrue(storage.contains("mb1:2"));
+
+        // The sequence number marking empty slots is stored as well
+        assertTrue(storage.add(origin, Long.MIN_VALUE));
+        assertFalse(storage.add(origin, Long.MIN_VALUE));
+        assertFalse(storage.contains(origin + 1, Long.MIN_VALUE));
+
+        // Ids of other origins and non-numeric ids are distinct
+        assertFalse(storage.contains(origin + 1, 2));
+        assertTrue(storage.add("mb1:abc"));
+        assertFalse(storage.add("mb1:abc"));
+        assertTrue(storage.add("mb1:abd"));
+
+        // Identifiers sharing their string hash code get distinct origins
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(MessageIds.defaultOrigin("Aa"), MessageIds.defaultOrigin("BB"));
+        assertTrue(storage.add("Aa:1"));
+        assertTrue(storage.add("BB:1"));
+    }
 }
@@ -0,0 +1,87 @@
+package utilities;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MicrometerMetricsBinderTest {
+
+    @Test
+    public void testBindCounters() {
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        metrics.getReceived().increment("TestMessage", "mb1");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerMetricsBinder(metrics, Tags.of("bus", "mb2")).bindTo(registry);
+
+        // Message types and peers counted after binding are registered as well
+        metrics.getReceived().increment("TestMessage", "mb1");
+        metrics.getReceived().increment("OtherMessage", "mb3");
+        metrics.getReceived().increment(null, null);
+
+        assertEquals(4, registry.get("tbus.messages").tags("event", "received", "bus", "mb2").functionCounter().count());
+        assertEquals(2, registry.get("tbus.messages.type").tags("event", "received", "type", "TestMessage").functionCounter().count());
+        assertEquals(1, registry.get("tbus.messages.type").tags("event", "received", "type", "OtherMessage").functionCounter().count());
+        assertEquals(1, registry.get("tbus.messages.peer").tags("event", "received", "peer", "mb3").functionCounter().count());
+        assertEquals(0, registry.get("tbus.messages").tags("event", "dropped").functionCounter().count());
+    }
+
+    @Test
+    public void testBindGaugesAndLatencies() throws Exception {
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        metrics.registerGauges(() -> Collections.singletonMap("mb1", 3), () -> 5, () -> 7);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerMetricsBinder(metrics, Tags.empty(), 100).bindTo(registry);
+        metrics.recordParse(System.nanoTime() - 2_000_000);
+
+        assertEquals(5, registry.get("tbus.queue.delivery").gauge().value());
+        assertEquals(3, registry.get("tbus.queue.outbound").gauge().value());
+        assertEquals(7, registry.get("tbus.dedup.ids").gauge().value());
+        assertEquals(0.002, registry.get("tbus.latency.parse").tags("percentile", "0.5").gauge().value(), 0.0005);
+        assertEquals(0, registry.get("tbus.latency.send").tags("percentile", "0.5").gauge().value());
+
+        // Only the latencies of the last interval are reported, while the histogram of the metrics keeps all latencies
+        Thread.sleep(150);
+        metrics.recordParse(System.nanoTime() - 10_000_000);
+        assertEquals(0.01, registry.get("tbus.latency.parse").tags("percentile", "0.5").gauge().value(), 0.001);
+        Thread.sleep(150);
+        assertEquals(0, registry.get("tbus.latency.parse").tags("percentile", "0.5").gauge().value());
+        assertEquals(2, metrics.getParseLatency().getTotalCount());
+    }
+
+    @Test
+    public void testBindOutboundQueuesOfNewPeers() {
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        Map<String, Integer> depths = new ConcurrentHashMap<>();
+        depths.put("mb1", 3);
+        metrics.registerGauges(() -> depths, () -> 0, () -> 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerMetricsBinder(metrics, Tags.empty()).bindOutboundQueues(registry);
+
+        // A peer added after binding gets its gauge as well
+        depths.put("mb2", 4);
+        metrics.outboundPeerAdded("mb2");
+        assertEquals(3, registry.get("tbus.queue.outbound.peer").tags("peer", "mb1").gauge().value());
+        assertEquals(4, registry.get("tbus.queue.outbound.peer").tags("peer", "mb2").gauge().value());
+    }
+
+    @Test
+    public void testBoundedMessageTypes() {
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerMetricsBinder(metrics, Tags.empty()).bindTo(registry);
+
+        // Message types supplied by other message buses beyond the limit share one meter
+        for (int i = 0; i < MessageCounter.MAX_KEYS + 10; i++) {
+            metrics.getReceived().increment("Type" + i, "mb1");
+        }
+        assertEquals(MessageCounter.MAX_KEYS + 1, metrics.getReceived().getCountsByType().size());
+        assertEquals(10, registry.get("tbus.messages.type").tags("event", "received", "type", MessageCounter.OVERFLOW_KEY).functionCounter().count());
+        assertEquals(MessageCounter.MAX_KEYS + 1, registry.get("tbus.messages.type").tags("event", "received").functionCounters().size());
+    }
+}
@@ -0,0 +1,60 @@
+package utilities;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeoutWheelTest {
+
+    @Test
+    public void testExpiry() throws Exception {
+        // The timeout needs several turns of the small wheel
+        TimeoutWheel wheel = new TimeoutWheel("test-wheel", 10, 4);
+        CountDownLatch expired = new CountDownLatch(1);
+        AtomicLong expiredAfter = new AtomicLong();
+        long start = System.nanoTime();
+        TimeoutWheel.Timeout timeout = wheel.schedule(() -> {
+            expiredAfter.set(System.nanoTime() - start);
+            expired.countDown();
+        }, 200);
+        assertEquals(1, wheel.size());
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertTrue(expiredAfter.get() >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.size());
+        wheel.stop();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel("test-wheel", 10, 512);
+        AtomicInteger expired = new AtomicInteger();
+        TimeoutWheel.Timeout[] timeouts = new TimeoutWheel.Timeout[1000];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = wheel.schedule(expired::incrementAndGet, 50);
+        }
+        // Cancel half of the timeouts, some of them already moved into the wheel
+        Thread.sleep(20);
+        for (int i = 0; i < timeouts.length; i += 2) {
+            assertTrue(timeouts[i].cancel());
+        }
+        assertEquals(500, wheel.size());
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (wheel.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(500, expired.get());
+        assertTrue(timeouts[0].isCancelled());
+        assertTrue(timeouts[1].isExpired());
+        wheel.stop();
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(expired::incrementAndGet, 10));
+    }
+}